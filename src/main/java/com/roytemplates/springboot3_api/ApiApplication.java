@@ -4,10 +4,14 @@ package com.roytemplates.springboot3_api;
 // Import required Spring Boot classes
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import lombok.extern.slf4j.Slf4j;
 
 // Main annotation that enables auto-configuration and component scanning
 @SpringBootApplication
+@EnableScheduling // background jobs (token revocation refresh, ...)
+@EnableCaching // Caffeine cache manager, see spring.cache.* properties
 @Slf4j
 public class ApiApplication {
 
@@ -0,0 +1,43 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the backend storing the uploaded files.
+ * "local" keeps them in UPLOAD_PATH, "s3" in a bucket of any S3 compatible service (AWS, MinIO, R2...).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.storage")
+public class BlobStoreProperties {
+    // local or s3
+    private String type = "local";
+
+    private S3 s3 = new S3();
+
+    @Data
+    public static class S3 {
+        // Bucket holding the files, must exist
+        private String bucket;
+
+        private String region = "us-east-1";
+
+        // Endpoint of an S3 compatible service, empty for AWS
+        private String endpoint;
+
+        // Bucket in the path instead of the host name, needed by most S3 compatible services
+        private boolean pathStyleAccess = false;
+
+        // Static credentials, empty to use the default AWS credentials chain
+        private String accessKey;
+        private String secretKey;
+
+        // Files above this size are uploaded in parts
+        private long multipartThreshold = 16 * 1024 * 1024;
+
+        // Size of the parts, at least 5MB on AWS
+        private long partSize = 8 * 1024 * 1024;
+    }
+}
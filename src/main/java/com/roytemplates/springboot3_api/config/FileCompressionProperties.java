@@ -0,0 +1,35 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Configuration properties for the gzip compression of generic files at store time.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.compression")
+public class FileCompressionProperties {
+    // Store compressible files gzipped
+    private boolean enabled = true;
+
+    // Files outside of this size range are stored as uploaded
+    private long minSize = 1024;
+    private long maxSize = 100L * 1024 * 1024;
+
+    // Smallest saving worth the decompression for clients without gzip support
+    private int minSavingsPercent = 10;
+
+    // Compressible MIME types, entries ending with "/" match a whole top level type
+    private List<String> mimeTypes = List.of(
+        "text/",
+        "application/json",
+        "application/xml",
+        "application/javascript",
+        "application/pdf",
+        "image/svg+xml"
+    );
+}
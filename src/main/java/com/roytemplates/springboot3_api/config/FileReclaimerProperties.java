@@ -0,0 +1,22 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the deletion of stored files no longer referenced.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.reclaimer")
+public class FileReclaimerProperties {
+    // Delete unreferenced files in the background
+    private boolean enabled = true;
+
+    // Time a file stays stored after its last reference is gone, lets a re-upload of the same content revive it
+    private long gracePeriodMinutes = 1440;
+
+    // Files deleted per run, per node
+    private int batchSize = 100;
+}
@@ -0,0 +1,20 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties bounding the memory used to decode images.
+ * A decoded image takes about 4 bytes per pixel, whatever its compressed size.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.images")
+public class ImageDecodingProperties {
+    // Images with more pixels are rejected without being decoded
+    private long maxSourcePixels = 100_000_000L;
+
+    // Larger images are subsampled while decoding to stay under this many pixels (~64 MB decoded)
+    private long maxDecodePixels = 16_777_216L;
+}
@@ -0,0 +1,23 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the image processing executor.
+ * Image encoding is CPU bound, it runs on its own pool instead of the Tomcat request threads.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.images.executor")
+public class ImageExecutorProperties {
+    // Worker threads, 0 for one per available CPU
+    private int threads = 0;
+
+    // Tasks waiting for a worker, beyond that requests are rejected with 503
+    private int queueCapacity = 32;
+
+    // Retry-After sent with the 503, in seconds
+    private int retryAfterSeconds = 5;
+}
@@ -0,0 +1,31 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Configuration properties for on demand image variants (resized copies of stored images).
+ * Only whitelisted sizes and qualities can be requested, so the variant cache can't be flooded.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.variants")
+public class ImageVariantProperties {
+    // Allowed values of the w and h parameters, in pixels
+    private List<Integer> sizes = List.of(64, 128, 256, 512, 1024, 2048);
+
+    // Allowed values of the q parameter, in percent
+    private List<Integer> qualities = List.of(50, 60, 70, 80, 90);
+
+    // Quality used when q is not given
+    private int defaultQuality = 80;
+
+    // Maximum total size of the variants kept on disk, least recently used ones are deleted first
+    private long maxCacheBytes = 256L * 1024 * 1024;
+
+    // Evicted variants are deleted this long after their eviction, so the downloads still sending them complete
+    private long evictedDeleteDelaySeconds = 60;
+}
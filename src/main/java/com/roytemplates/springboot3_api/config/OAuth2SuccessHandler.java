@@ -12,6 +12,7 @@ import com.roytemplates.springboot3_api.model.AuthProvider;
 import com.roytemplates.springboot3_api.model.User;
 import com.roytemplates.springboot3_api.model.UserRole;
 import com.roytemplates.springboot3_api.repository.UserRepository;
+import com.roytemplates.springboot3_api.security.PrincipalCache;
 import com.roytemplates.springboot3_api.service.JwtService;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -47,10 +48,12 @@ public class OAuth2SuccessHandler implements AuthenticationSuccessHandler {
 
     private final JwtService jwtService;
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
-    public OAuth2SuccessHandler(JwtService jwtService, UserRepository userRepository) {
+    public OAuth2SuccessHandler(JwtService jwtService, UserRepository userRepository, PrincipalCache principalCache) {
         this.jwtService = jwtService;
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -78,6 +81,7 @@ public class OAuth2SuccessHandler implements AuthenticationSuccessHandler {
         if (user.getRole() == null) {
             user.setRole(UserRole.PENDING);
             userRepository.save(user);
+            principalCache.evictUser(user.getEmail());
         }
 
 
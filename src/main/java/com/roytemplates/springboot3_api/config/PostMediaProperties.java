@@ -0,0 +1,28 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the background processing of post images (createPost?async=true).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "posts.media")
+public class PostMediaProperties {
+    // Worker threads committing staged images
+    private int workers = 2;
+
+    // Posts waiting for processing, beyond that async creation is rejected with 503
+    private int maxPending = 100;
+
+    // Attempts before the post is marked FAILED
+    private int maxAttempts = 3;
+
+    // Delay before a retry, multiplied by the attempt number
+    private long retryDelayMs = 2000;
+
+    // Posts still PENDING after this long (e.g. lost on restart) are marked FAILED
+    private long staleAfterMinutes = 15;
+}
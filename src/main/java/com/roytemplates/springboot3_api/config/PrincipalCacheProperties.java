@@ -0,0 +1,23 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the authenticated principal cache.
+ * Controls how long resolved users are kept in memory by the JWT filter.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "auth.principal-cache")
+public class PrincipalCacheProperties {
+    // When disabled the filter loads the user and business from Mongo on every request
+    private boolean enabled = true;
+
+    // Time to live of a cached principal in seconds (bounds staleness across nodes)
+    private long ttlSeconds = 60;
+
+    // Maximum number of cached principals
+    private long maximumSize = 10000;
+}
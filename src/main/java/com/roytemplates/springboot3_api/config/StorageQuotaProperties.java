@@ -0,0 +1,20 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the per business storage quota.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.quota")
+public class StorageQuotaProperties {
+    // Bytes of active files a business may store
+    private long maxBytesPerBusiness = 1024L * 1024 * 1024;
+
+    // Reservations of counters left untouched this long belong to lost uploads (e.g. restart), reconciliation drops them
+    // (except the reservations of open upload sessions)
+    private long staleReservationMinutes = 60;
+}
@@ -0,0 +1,26 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the migration of stored files from the flat layout to the sharded one.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.sharding.migration")
+public class StorageShardingProperties {
+    // Move the files of the legacy flat layout in the background
+    private boolean enabled = true;
+
+    // Files moved per run
+    private int batchSize = 500;
+
+    // Delay between two runs
+    private long intervalMs = 1000;
+
+    // Files are linked into the sharded layout first, their flat name is removed this long after,
+    // so the downloads that resolved the flat path (sendfile opens it later) complete
+    private long unlinkDelaySeconds = 60;
+}
@@ -0,0 +1,22 @@
+package com.roytemplates.springboot3_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Data;
+
+/**
+ * Configuration properties for the resumable uploads (/v1/files/uploads).
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "files.uploads")
+public class UploadSessionProperties {
+    // Largest file accepted by a session
+    private long maxFileSize = 1024L * 1024 * 1024;
+
+    // Largest chunk accepted by one request
+    private long maxChunkSize = 16 * 1024 * 1024;
+
+    // Sessions without a new chunk for this long are deleted with their data
+    private long sessionTtlMinutes = 1440;
+}
@@ -21,6 +21,8 @@ import com.roytemplates.springboot3_api.request.RegisterRequest;
 import com.roytemplates.springboot3_api.response.LoginResponse;
 import com.roytemplates.springboot3_api.response.RegisterResponse;
 import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
+import com.roytemplates.springboot3_api.security.PrincipalCache;
+import com.roytemplates.springboot3_api.security.TokenRevocationService;
 import com.roytemplates.springboot3_api.service.EmailService;
 import com.roytemplates.springboot3_api.service.JwtService;
 
@@ -84,6 +86,14 @@ public class AuthController {
     @Autowired
     private EmailService emailService;
 
+    // Cached principals used by the jwt filter, evicted on user changes
+    @Autowired
+    private PrincipalCache principalCache;
+
+    // Revokes issued tokens on password reset
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
     // Base domain loaded from properties
     @Value("${server.address}")
     private String serverAddress;
@@ -144,12 +154,12 @@ public class AuthController {
         User user = new User(request.getFirstName(), request.getLastName(), request.getEmail(), 
                 passwordEncoder.encode(request.getPassword()), UserRole.PENDING);
         
-        // add jwt token 
-        String token = jwtService.generateToken(user);
-
         // Save user
         User savedUser = userRepository.save(user);
 
+        // add jwt token (after saving so the user id can be embedded)
+        String token = jwtService.generateToken(savedUser);
+
         // Generate and save email verification token
         String verificationToken = UUID.randomUUID().toString();
         EmailVerificationToken emailToken = new EmailVerificationToken(
@@ -291,7 +301,9 @@ public class AuthController {
 
         User user = userOpt.get();
         user.setPassword(passwordEncoder.encode(password));
+        tokenRevocationService.revokeTokens(user);
         userRepository.save(user);
+        principalCache.evictUser(user.getEmail());
         passwordResetTokenRepository.delete(resetToken);
 
         mav.addObject("success", true);
@@ -331,6 +343,7 @@ public class AuthController {
         User user = userOpt.get();
         user.setEmailVerified(true);
         userRepository.save(user);
+        principalCache.evictUser(user.getEmail());
         emailVerificationTokenRepository.delete(verificationToken);
 
         mav.addObject("success", true);
@@ -404,7 +417,7 @@ public class AuthController {
         
         try {
             // Extract email from token
-            String userEmail = jwtService.extractUsername(token);
+            String userEmail = jwtService.verifyToken(token).getSubject();
             
             // Find user by email
             Optional<User> userOpt = userRepository.findByEmail(userEmail);
@@ -2,6 +2,7 @@ package com.roytemplates.springboot3_api.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.MediaType;
@@ -11,16 +12,23 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.roytemplates.springboot3_api.model.Business;
+import com.roytemplates.springboot3_api.model.StorageUsage;
 import com.roytemplates.springboot3_api.repository.BusinessRepository;
 import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
+import com.roytemplates.springboot3_api.security.PrincipalCache;
+import com.roytemplates.springboot3_api.security.TokenRevocationService;
 import com.roytemplates.springboot3_api.service.FileService;
-import com.roytemplates.springboot3_api.service.FileStorageService;
+import com.roytemplates.springboot3_api.service.ServerBusyException;
+import com.roytemplates.springboot3_api.service.StorageQuotaExceededException;
+import com.roytemplates.springboot3_api.service.StorageQuotaService;
 
 import jakarta.validation.Valid;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Controller for managing businesses.
@@ -33,7 +41,9 @@ public class BusinessController {
 
     private final BusinessRepository businessRepository;
     private final FileService fileService;
-    private final FileStorageService fileStorageService;
+    private final StorageQuotaService storageQuotaService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * Creates a new business.
@@ -60,6 +70,9 @@ public class BusinessController {
             @RequestPart(value = "logoImage", required = false) MultipartFile logo,
             @RequestPart(value = "wallpaperImage", required = false) MultipartFile wallpaper) {
     
+        // rolled back if the request fails
+        Business savedBusiness = null;
+        List<String> uploaded = new ArrayList<>();
         try {
             // Create new business object with the provided fields
             Business business = new Business();
@@ -76,25 +89,61 @@ public class BusinessController {
             business.setBrandColorRGB(brandColorRGB);
             
             // Save the business first to get an ID
-            Business savedBusiness = businessRepository.save(business);
+            savedBusiness = businessRepository.save(business);
             
             // Handle file uploads with the generated business ID
-            if (logo != null && fileStorageService.validateImageFile(logo)) {
+            if (logo != null) {
                 String logoUrl = fileService.uploadImage(logo, savedBusiness.getId(), null).getStoredFilename();
+                uploaded.add(logoUrl);
                 savedBusiness.setLogoImage(logoUrl);
             }
         
-            if (wallpaper != null && fileStorageService.validateImageFile(wallpaper)) {
+            if (wallpaper != null) {
                 String wallpaperUrl = fileService.uploadImage(wallpaper, savedBusiness.getId(), null).getStoredFilename();
+                uploaded.add(wallpaperUrl);
                 savedBusiness.setWallpaperImage(wallpaperUrl);
             }
         
             // Save again with the updated image URLs
             savedBusiness = businessRepository.save(savedBusiness);
             return ResponseEntity.status(HttpStatus.CREATED).body(savedBusiness);
+        } catch (IllegalArgumentException e) {
+            // not an image, or too large to decode
+            rollBack(savedBusiness, uploaded);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        } catch (StorageQuotaExceededException e) {
+            rollBack(savedBusiness, uploaded);
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(null);
+        } catch (ServerBusyException e) {
+            rollBack(savedBusiness, uploaded);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(null);
         } catch (IOException e) {
             log.error("Error uploading images", e);
+            rollBack(savedBusiness, uploaded);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        } catch (RuntimeException e) {
+            rollBack(savedBusiness, uploaded);
+            throw e;
+        }
+    }
+
+    /**
+     * Undoes a failed request: the images it uploaded are deleted (nothing references them and
+     * they count against the quota), as is the business it was creating.
+     *
+     * @param created The business created by the request, null for none.
+     * @param uploaded The stored filenames of the images uploaded by the request.
+     */
+    private void rollBack(Business created, List<String> uploaded) {
+        try {
+            uploaded.forEach(fileService::deleteReplacedFile);
+            if (created != null) {
+                businessRepository.deleteById(created.getId());
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not roll back a failed business request", e);
         }
     }
     /**
@@ -138,6 +187,8 @@ public class BusinessController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
             }
     
+            // images uploaded by this request, deleted if it fails
+            List<String> uploaded = new ArrayList<>();
             try {
                 // Update fields only if they are provided
                 if (name != null) existingBusiness.setName(name);
@@ -162,24 +213,54 @@ public class BusinessController {
                     }
                 }
     
-                // Handle file uploads
-                if (logoImage != null && fileStorageService.validateImageFile(logoImage)) {
+                // Handle file uploads, the replaced images are deleted once the business is saved
+                String previousLogo = existingBusiness.getLogoImage();
+                String previousWallpaper = existingBusiness.getWallpaperImage();
+                if (logoImage != null) {
                     String logoUrl = fileService.uploadImage(logoImage, existingBusiness.getId(), 
                         principal.getUser().getId()).getStoredFilename();
+                    uploaded.add(logoUrl);
                     existingBusiness.setLogoImage(logoUrl);
                 }
             
-                if (wallpaperImage != null && fileStorageService.validateImageFile(wallpaperImage)) {
+                if (wallpaperImage != null) {
                     String wallpaperUrl = fileService.uploadImage(wallpaperImage, existingBusiness.getId(), 
                         principal.getUser().getId()).getStoredFilename();
+                    uploaded.add(wallpaperUrl);
                     existingBusiness.setWallpaperImage(wallpaperUrl);
                 }
             
                 Business updatedBusiness = businessRepository.save(existingBusiness);
+                // referenced by the business from here on
+                uploaded.clear();
+                if (!Objects.equals(previousLogo, updatedBusiness.getLogoImage())) {
+                    fileService.deleteReplacedFile(previousLogo);
+                }
+                if (!Objects.equals(previousWallpaper, updatedBusiness.getWallpaperImage())) {
+                    fileService.deleteReplacedFile(previousWallpaper);
+                }
+                principalCache.evictBusiness(updatedBusiness.getId());
+                tokenRevocationService.setBusinessDeleted(updatedBusiness.getId(), updatedBusiness.isDeleted());
                 return ResponseEntity.ok(updatedBusiness);
+            } catch (IllegalArgumentException e) {
+                // not an image, or too large to decode
+                rollBack(null, uploaded);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            } catch (StorageQuotaExceededException e) {
+                rollBack(null, uploaded);
+                return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(null);
+            } catch (ServerBusyException e) {
+                rollBack(null, uploaded);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                        .body(null);
             } catch (IOException e) {
                 log.error("Error uploading images", e);
+                rollBack(null, uploaded);
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+            } catch (RuntimeException e) {
+                rollBack(null, uploaded);
+                throw e;
             }
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
@@ -212,6 +293,8 @@ public class BusinessController {
             Business business = optionalBusiness.get();
             business.setDeleted(true);
             businessRepository.save(business);
+            principalCache.evictBusiness(business.getId());
+            tokenRevocationService.setBusinessDeleted(business.getId(), true);
             return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -261,4 +344,35 @@ public class BusinessController {
         
         return ResponseEntity.notFound().build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the storage used by a business, read from its counters.
+     *
+     * @param id The ID of the business
+     * @param principal The authenticated user
+     * @return The used and reserved bytes, the file count and the quota
+     */
+    @GetMapping("/{id}/storage")
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN')")
+    public ResponseEntity<?> getStorageUsage(
+            @PathVariable("id") String id,
+            @AuthenticationPrincipal CustomUserPrincipal principal) {
+
+        // Admins only see their own business
+        if (!principal.getUser().getRole().toString().equals("SUPER_ADMIN") &&
+            !id.equals(principal.getUser().getBusinessID())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied");
+        }
+
+        StorageUsage usage = storageQuotaService.getUsage(id);
+        var storage = new HashMap<String, Object>();
+        storage.put("businessId", id);
+        storage.put("usedBytes", usage.getUsedBytes());
+        storage.put("reservedBytes", usage.getReservedBytes());
+        storage.put("fileCount", usage.getFileCount());
+        storage.put("quotaBytes", storageQuotaService.getQuotaBytes());
+        storage.put("reconciledAt", usage.getReconciledAt());
+
+        return ResponseEntity.ok(storage);
+    }
+}
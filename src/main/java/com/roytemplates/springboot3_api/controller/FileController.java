@@ -2,24 +2,40 @@ package com.roytemplates.springboot3_api.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roytemplates.springboot3_api.config.ImageVariantProperties;
+import com.roytemplates.springboot3_api.dto.ImageVariant;
+import com.roytemplates.springboot3_api.dto.PageCursor;
 import com.roytemplates.springboot3_api.model.FileMetadata;
 import com.roytemplates.springboot3_api.model.User;
-import com.roytemplates.springboot3_api.repository.UserRepository;
 import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
+import com.roytemplates.springboot3_api.service.FileDownloadService;
 import com.roytemplates.springboot3_api.service.FileService;
-import com.roytemplates.springboot3_api.service.JwtService;
+import com.roytemplates.springboot3_api.service.ImageVariantService;
+import com.roytemplates.springboot3_api.service.ServerBusyException;
+import com.roytemplates.springboot3_api.service.StorageQuotaExceededException;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Controller for handling file operations
@@ -31,8 +47,10 @@ import java.util.List;
 public class FileController {
 
     private final FileService fileService;
-    private final JwtService jwtService;
-    private final UserRepository userRepository;
+    private final FileDownloadService fileDownloadService;
+    private final ImageVariantService imageVariantService;
+    private final ImageVariantProperties imageVariantProperties;
+    private final ObjectMapper objectMapper;
 
     /**
      * Upload an image file (PNG, JPEG, WebP only)
@@ -41,81 +59,164 @@ public class FileController {
     @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
     public ResponseEntity<FileMetadata> uploadImage(
             @RequestParam("file") MultipartFile file,
-            @RequestHeader("Authorization") String authHeader) {
+            @AuthenticationPrincipal CustomUserPrincipal principal) {
         try {
-            // Remove "Bearer " and extract user info from the token
-            String token = authHeader.replace("Bearer ", "").trim();
-            // Use your jwtService (inject it if needed) to extract user email
-            String email = jwtService.extractUsername(token);
-            // Retrieve the user from your repository (inject UserRepository)
-            User user = userRepository.findByEmail(email)
-                            .orElseThrow(() -> new RuntimeException("User not found"));
-            
+            User user = principal.getUser();
+
             FileMetadata metadata = fileService.uploadImage(file, user.getBusinessID(), user.getId());
             return ResponseEntity.ok(metadata);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
+        } catch (StorageQuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).build();
+        } catch (ServerBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
         } catch (IOException e) {
             log.error("Error uploading image", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * List the active files of the user's business, newest first.
+     * Cursor paging: pass the X-Next-Cursor header of the previous response as cursor.
+     * fields (comma separated, see FileService.LISTABLE_FIELDS) limits the returned fields,
+     * fileType (generic, image) and mimePrefix (e.g. "image/") filter the files.
+     *
+     * @return A page of files, with the X-Next-Cursor header set when more files may follow.
+     */
+    @GetMapping("/")
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<List<Map<String, Object>>> listFiles(
+            @AuthenticationPrincipal CustomUserPrincipal principal,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String fileType,
+            @RequestParam(required = false) String mimePrefix) {
+        try {
+            if (size > 100) size = 100; // limit page size to 100
+            if (size < 1) size = 1;
+
+            Set<String> selected = fields == null || fields.isBlank() ? null
+                : Arrays.stream(fields.split(",")).map(String::trim).filter(field -> !field.isEmpty())
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+
+            List<FileMetadata> files = fileService.getBusinessFiles(
+                principal.getUser().getBusinessID(),
+                fileType == null || fileType.isBlank() ? null : FileMetadata.FileType.valueOf(fileType.toUpperCase()),
+                mimePrefix == null || mimePrefix.isBlank() ? null : mimePrefix,
+                cursor == null || cursor.isBlank() ? null : PageCursor.decode(cursor),
+                selected,
+                size);
+
+            // Only the selected fields are serialized, the id is always included
+            List<Map<String, Object>> body = files.stream().map(file -> {
+                Map<String, Object> values = objectMapper.convertValue(file, new TypeReference<Map<String, Object>>() {});
+                if (selected != null) {
+                    values.keySet().removeIf(key -> !key.equals("id") && !selected.contains(key));
+                }
+                return values;
+            }).collect(Collectors.toList());
+
+            // A full page means there may be more, hand out the cursor of its last file
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            FileMetadata last = files.isEmpty() ? null : files.get(files.size() - 1);
+            if (files.size() == size && last.getUploadDate() != null) {
+                response.header("X-Next-Cursor",
+                    new PageCursor(last.getUploadDate().toInstant(ZoneOffset.UTC), last.getId()).encode());
+            }
+            return response.body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Get file by Name 
      * and verify that it belongs to the user's business
+     * Supports Range/If-Range and If-None-Match requests, see FileDownloadService
+     * Images can be resized with w, h, fit (contain, cover) and q, restricted to files.variants.*
      */
     @GetMapping("/{fileName}")
-    public ResponseEntity<Resource> getFile(
+    public void getFile(
             @PathVariable String fileName,
-            @RequestHeader("Authorization") String authHeader) {
+            @AuthenticationPrincipal CustomUserPrincipal principal,
+            @RequestParam(required = false) Integer w,
+            @RequestParam(required = false) Integer h,
+            @RequestParam(required = false) String fit,
+            @RequestParam(required = false) Integer q,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         try {
-            String token = authHeader.replace("Bearer ", "").trim();
-            String email = jwtService.extractUsername(token);
-            User user = userRepository.findByEmail(email)
-                            .orElseThrow(() -> new RuntimeException("User not found"));
+            ImageVariant variant = ImageVariant.of(w, h, fit, q, imageVariantProperties);
 
-            Resource resource = fileService.getFileByNameAndBusiness(fileName, user.getBusinessID());
-            // Get file metadata for content type and original filename
+            User user = principal.getUser();
+
+            // Get file metadata for access check and content type
             FileMetadata metadata = fileService.getFileMetadata(fileName, user.getBusinessID());
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(metadata.getMimeType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION
-                            // note needed, return recommended download name as original.
-                            //"attachment; filename=\"" + metadata.getOriginalFilename() + "\""
-                            )
-                    .body(resource);
+            serve(metadata, variant, false, request, response);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        } catch (ServerBusyException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
         } catch (IOException e) {
             log.error("Error retrieving file", e);
-            return ResponseEntity.internalServerError().build();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
      * Get file by Name 
      * public endpoint for select files
+     * Supports Range/If-Range and If-None-Match requests, cacheable by shared caches
+     * Images can be resized with w, h, fit (contain, cover) and q, restricted to files.variants.*
      */
     @GetMapping("/public/{fileName}")
-    public ResponseEntity<Resource> getFilePublic(
-            @PathVariable String fileName
+    public void getFilePublic(
+            @PathVariable String fileName,
+            @RequestParam(required = false) Integer w,
+            @RequestParam(required = false) Integer h,
+            @RequestParam(required = false) String fit,
+            @RequestParam(required = false) Integer q,
+            HttpServletRequest request,
+            HttpServletResponse response
             ) {
         try {
+            ImageVariant variant = ImageVariant.of(w, h, fit, q, imageVariantProperties);
 
-            Resource resource = fileService.getFileByName(fileName);
-            // Get file metadata for content type and original filename
+            // Get file metadata for access check and content type
             FileMetadata metadata = fileService.getFileMetadataPublic(fileName);
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(metadata.getMimeType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION
-                            // note needed, return recommended download name as original.
-                            //"attachment; filename=\"" + metadata.getOriginalFilename() + "\""
-                            )
-                    .body(resource);
+            serve(metadata, variant, true, request, response);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        } catch (ServerBusyException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
         } catch (IOException e) {
             log.error("Error retrieving file", e);
-            return ResponseEntity.internalServerError().build();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Serves the original, or the requested variant of an image
+    private void serve(FileMetadata metadata, ImageVariant variant, boolean publicCache,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (variant == null) {
+            fileDownloadService.serve(metadata, publicCache, request, response);
+        } else if (imageVariantService.supports(metadata)) {
+            fileDownloadService.serveVariant(metadata, variant, publicCache, request, response);
+        } else {
+            throw new IllegalArgumentException("Only images can be resized");
         }
     }
 
@@ -2,6 +2,7 @@ package com.roytemplates.springboot3_api.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -11,9 +12,11 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.stream.Collectors;
 
+import com.roytemplates.springboot3_api.dto.PageCursor;
 import com.roytemplates.springboot3_api.dto.PostDTO;
 import com.roytemplates.springboot3_api.model.FileMetadata;
 import com.roytemplates.springboot3_api.model.Like;
+import com.roytemplates.springboot3_api.model.MediaStatus;
 import com.roytemplates.springboot3_api.model.Post;
 import com.roytemplates.springboot3_api.model.User;
 import com.roytemplates.springboot3_api.repository.LikeRepository;
@@ -24,13 +27,19 @@ import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
 import com.roytemplates.springboot3_api.service.FileService;
 import com.roytemplates.springboot3_api.service.FileStorageService;
 import com.roytemplates.springboot3_api.service.JwtService;
+import com.roytemplates.springboot3_api.service.LikeCounterAggregator;
+import com.roytemplates.springboot3_api.service.PostMediaProcessor;
+import com.roytemplates.springboot3_api.service.ServerBusyException;
+import com.roytemplates.springboot3_api.service.StorageQuotaExceededException;
 
 import jakarta.validation.Valid;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -46,15 +55,20 @@ public class PostController {
 
     private final PostRepository postRepository;
     private final FileService fileService;
-    private final FileStorageService fileStorageService;
     private final JwtService jwtService;
     private final UserRepository userRepository;
     private final LikeRepository likeRepository;
+    private final LikeCounterAggregator likeCounterAggregator;
+    private final PostMediaProcessor postMediaProcessor;
 
      /**
      * Creates a new post.
      *
+     * With async=true the image is only staged: the post is saved with a PENDING media status and
+     * returned with 202 Accepted, PostMediaProcessor stores the image and marks the post READY (or FAILED).
+     *
      * @param request     The post request.
+     * @param async       Process the image in the background.
      * @param authHeader  The authorization header.
      * @return The created post.
      */
@@ -62,14 +76,15 @@ public class PostController {
     @PreAuthorize("hasRole('DEFAULT')")
     public ResponseEntity<Post> createPost(
             @Valid @ModelAttribute PostRequest request,
+            @RequestParam(defaultValue = "false") boolean async,
             @AuthenticationPrincipal CustomUserPrincipal principal
     ) {
         try {
             User user = principal.getUser();
 
-            // Validate file type and size
-            if (!fileStorageService.validateImageFile(request.getFile())) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            // the image type is checked while it is staged, IllegalArgumentException otherwise
+            if (async) {
+                return createPostAsync(request, user);
             }
 
             // Compress and store the image
@@ -85,6 +100,7 @@ public class PostController {
                     .userId(user.getId())
                     .businessId(user.getBusinessID())
                     .imageUrl(imageUrl)
+                    .mediaStatus(MediaStatus.READY)
                     .build();
 
             // Save the post to the database
@@ -94,6 +110,15 @@ public class PostController {
         } catch (IOException e) {
             log.error("Error creating post", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        } catch (IllegalArgumentException e) {
+            // not an image, or too large to decode
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        } catch (StorageQuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(null);
+        } catch (ServerBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(null);
         } catch (AccessDeniedException e) {
             log.error("Access denied", e);
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
@@ -106,32 +131,81 @@ public class PostController {
         }
     }
 
+    // Stages the image, saves the post as PENDING and hands the image to the background pipeline
+    private ResponseEntity<Post> createPostAsync(PostRequest request, User user) throws IOException {
+        FileStorageService.StagedUpload staged = fileService.stageImage(request.getFile(), user.getBusinessID());
+
+        Post savedPost = null;
+        try {
+            Post post = Post.builder()
+                    .title(request.getTitle())
+                    .description(request.getDescription())
+                    .location(request.getLocation())
+                    .creationDateUtc(Instant.now())
+                    .userId(user.getId())
+                    .businessId(user.getBusinessID())
+                    .mediaStatus(MediaStatus.PENDING)
+                    .build();
+            savedPost = postRepository.save(post);
+
+            postMediaProcessor.submit(savedPost, staged);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(savedPost);
+        } catch (RuntimeException e) {
+            // not queued (e.g. too many pending posts), undo
+            fileService.cancelStagedImage(staged, user.getBusinessID());
+            if (savedPost != null) {
+                postRepository.deleteById(savedPost.getId());
+            }
+            throw e;
+        }
+    }
+
     /**
      * Lists all posts for the current user or business.
+     * Supports cursor paging (pass the X-Next-Cursor header of the previous response as cursor)
+     * and, for older clients, offset paging with page/size.
+     * Posts whose image is still processing (or failed) are only listed for their author.
      *
      * @param authHeader The authorization header.
-     * @return A list of posts.
+     * @return A list of posts, with the X-Next-Cursor header set when more posts may follow.
      */
     @GetMapping("/")
     public ResponseEntity<List<PostDTO>> listPosts(
         @AuthenticationPrincipal CustomUserPrincipal principal,
         @RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "20") int size
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(required = false) String cursor
     ) {
         try {
             // shift zero based page index to start with 1
             if (page > 0) page--; 
             if (size > 100) size = 100; // limit page size to 100
+            if (size < 1) size = 1;
             
             User user = principal.getUser();
-            Pageable pageable = PageRequest.of(page, size);
-    
-            // Get paginated posts by business ID
-            List<Post> postPage = postRepository.findByBusinessId(user.getBusinessID(), pageable);
+
+            // Get paginated posts by business ID, by cursor if given otherwise by offset
+            List<Post> postPage;
+            if (cursor != null && !cursor.isBlank()) {
+                postPage = postRepository.findByBusinessIdAfter(user.getBusinessID(), user.getId(), PageCursor.decode(cursor), size);
+            } else {
+                Pageable pageable = PageRequest.of(page, size);
+                postPage = postRepository.findFeedByBusinessId(user.getBusinessID(), user.getId(), pageable);
+            }
     
+            // Resolve the liked state of the whole page with one query
+            Set<String> likedPostIds = Collections.emptySet();
+            if (!postPage.isEmpty()) {
+                List<String> postIds = postPage.stream().map(Post::getId).collect(Collectors.toList());
+                likedPostIds = likeRepository.findLikedByUserIdAndPostIdIn(user.getId(), postIds).stream()
+                        .map(Like::getPostId)
+                        .collect(Collectors.toSet());
+            }
+            final Set<String> liked = likedPostIds;
+
             // Convert to PostDTO and check if liked
             List<PostDTO> postDTOs = postPage.stream().map(post -> {
-                boolean isLiked = likeRepository.findByUserIdAndPostId(user.getId(), post.getId()).isPresent();
+                boolean isLiked = liked.contains(post.getId());
                 return PostDTO.builder()
                         .id(post.getId())
                         .title(post.getTitle())
@@ -139,14 +213,24 @@ public class PostController {
                         .location(post.getLocation())
                         .creationDateUtc(post.getCreationDateUtc())
                         .userId(post.getUserId())
-                        .likes(post.getLikes())
+                        .likes(likesWithPending(post))
                         .businessId(post.getBusinessId())
                         .imageUrl(post.getImageUrl())
+                        .mediaStatus(post.getMediaStatus() != null ? post.getMediaStatus() : MediaStatus.READY)
                         .isLiked(isLiked)
                         .build();
             }).collect(Collectors.toList());
-    
-            return ResponseEntity.ok(postDTOs);
+
+            // A full page means there may be more, hand out the cursor of its last post
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            Post last = postPage.isEmpty() ? null : postPage.get(postPage.size() - 1);
+            if (postPage.size() == size && last.getCreationDateUtc() != null) {
+                response.header("X-Next-Cursor", new PageCursor(last.getCreationDateUtc(), last.getId()).encode());
+            }
+            return response.body(postDTOs);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid cursor", e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         } catch (NoSuchElementException e) {
             log.error("User not found", e);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
@@ -239,8 +323,9 @@ public class PostController {
                     return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
                 }
 
-                // Delete the post from the database
+                // Delete the post from the database, then its image
                 postRepository.delete(post);
+                fileService.deleteReplacedFile(post.getImageUrl());
 
                 return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
             } else {
@@ -260,6 +345,8 @@ public class PostController {
 
      /**
      * Toggles like/unlike for a post.
+     * Implemented with atomic operations (delete or upsert of the like, then $inc of the counter)
+     * so concurrent toggles can't lose updates.
      *
      * @param postId     The ID of the post to like/unlike.
      * @param authHeader The authorization header.
@@ -271,11 +358,51 @@ public class PostController {
         @PathVariable("postId") String postId,
         @AuthenticationPrincipal CustomUserPrincipal principal
     ) {
+        return updateLike(postId, principal, null);
+    }
+
+    /**
+     * Likes a post. Idempotent, safe to retry.
+     *
+     * @param postId The ID of the post to like.
+     * @return true, the post is liked.
+     */
+    @PutMapping("/{postId}/like")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<Boolean> likePost(
+        @PathVariable("postId") String postId,
+        @AuthenticationPrincipal CustomUserPrincipal principal
+    ) {
+        return updateLike(postId, principal, true);
+    }
+
+    /**
+     * Unlikes a post. Idempotent, safe to retry.
+     *
+     * @param postId The ID of the post to unlike.
+     * @return false, the post is not liked.
+     */
+    @DeleteMapping("/{postId}/like")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<Boolean> unlikePost(
+        @PathVariable("postId") String postId,
+        @AuthenticationPrincipal CustomUserPrincipal principal
+    ) {
+        return updateLike(postId, principal, false);
+    }
+
+    /**
+     * Sets the like state of a post for the current user.
+     *
+     * @param liked The requested state, null to toggle.
+     * @return The resulting like state.
+     */
+    private ResponseEntity<Boolean> updateLike(String postId, CustomUserPrincipal principal, Boolean liked) {
         try {
             User user = principal.getUser();
 
-            // Retrieve the post from the repository
-            Post post = postRepository.findById(postId)
+            // Retrieve the post business only, for the access check
+            Post post = postRepository.findBusinessIdById(postId)
                     .orElseThrow(() -> new NoSuchElementException("Post not found"));
 
             // Check if the user is authorized to like the post
@@ -283,32 +410,20 @@ public class PostController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
             }
 
-            // Find existing like record
-            Optional<Like> existingLike = likeRepository.findByUserIdAndPostId(user.getId(), postId);
-
             boolean isLiked;
-            if (existingLike.isPresent()) {
-                Like like = existingLike.get();
-                isLiked = !like.isLiked();
-                like.setLiked(isLiked);
-                likeRepository.save(like);
-            } else {
-                Like newLike = Like.builder()
-                        .userId(user.getId())
-                        .postId(postId)
-                        .liked(true)
-                        .build();
-                likeRepository.save(newLike);
+            if (Boolean.FALSE.equals(liked)) {
+                unlike(user.getId(), postId);
+                isLiked = false;
+            } else if (Boolean.TRUE.equals(liked)) {
+                like(user.getId(), postId);
                 isLiked = true;
-            }
-
-            // Update post likes count
-            if (isLiked) {
-                post.setLikes(post.getLikes() + 1);
             } else {
-                post.setLikes(post.getLikes() - 1);
+                // toggle: unlike if liked, like otherwise
+                isLiked = !unlike(user.getId(), postId);
+                if (isLiked) {
+                    like(user.getId(), postId);
+                }
             }
-            postRepository.save(post);
 
             return ResponseEntity.ok(isLiked);
         } catch (NoSuchElementException e) {
@@ -322,4 +437,28 @@ public class PostController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
+
+    // Likes the post, the counter is only incremented if the like was created by this call
+    private boolean like(String userId, String postId) {
+        boolean added = likeRepository.addLike(userId, postId);
+        if (added) {
+            likeCounterAggregator.add(postId, 1);
+        }
+        return added;
+    }
+
+    // Stored counter plus the deltas not yet flushed by the aggregator
+    private int likesWithPending(Post post) {
+        long stored = post.getLikes() != null ? post.getLikes() : 0;
+        return (int) Math.max(0, stored + likeCounterAggregator.pendingDelta(post.getId()));
+    }
+
+    // Unlikes the post, the counter is only decremented if the like was removed by this call
+    private boolean unlike(String userId, String postId) {
+        boolean removed = likeRepository.removeLike(userId, postId);
+        if (removed) {
+            likeCounterAggregator.add(postId, -1);
+        }
+        return removed;
+    }
 }
\ No newline at end of file
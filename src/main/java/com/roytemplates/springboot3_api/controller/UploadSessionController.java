@@ -0,0 +1,157 @@
+package com.roytemplates.springboot3_api.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import com.roytemplates.springboot3_api.model.FileMetadata;
+import com.roytemplates.springboot3_api.model.UploadSession;
+import com.roytemplates.springboot3_api.model.User;
+import com.roytemplates.springboot3_api.request.UploadSessionRequest;
+import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
+import com.roytemplates.springboot3_api.service.ServerBusyException;
+import com.roytemplates.springboot3_api.service.StorageQuotaExceededException;
+import com.roytemplates.springboot3_api.service.UploadOffsetMismatchException;
+import com.roytemplates.springboot3_api.service.UploadSessionService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Controller for resumable uploads of large files, see UploadSessionService.
+ *
+ * The client opens a session with the file size, PUTs the raw bytes in chunks at the offset
+ * returned in Upload-Offset (a GET tells where to resume after a failure), then commits the session.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/v1/files/uploads")
+@RequiredArgsConstructor
+public class UploadSessionController {
+
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final UploadSessionService uploadSessionService;
+
+    /**
+     * Open an upload session, the size is reserved in the storage quota of the business
+     */
+    @PostMapping
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<UploadSession> createSession(
+            @Valid @RequestBody UploadSessionRequest request,
+            @AuthenticationPrincipal CustomUserPrincipal principal) {
+        try {
+            User user = principal.getUser();
+            UploadSession session = uploadSessionService.create(request.getFilename(), request.getSize(),
+                request.isPublicAccess(), user.getBusinessID(), user.getId());
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (StorageQuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).build();
+        }
+    }
+
+    /**
+     * Get a session, Upload-Offset is where the next chunk starts
+     */
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<UploadSession> getSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal CustomUserPrincipal principal) {
+        try {
+            UploadSession session = uploadSessionService.get(id, principal.getUser().getId());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, String.valueOf(session.getReceivedBytes()))
+                    .body(session);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Append a chunk (raw request body) at the given offset.
+     * Answers 409 with the expected Upload-Offset when the offset is not where the received data ends.
+     */
+    @PutMapping("/{id}")
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<UploadSession> uploadChunk(
+            @PathVariable String id,
+            @RequestParam long offset,
+            @AuthenticationPrincipal CustomUserPrincipal principal,
+            HttpServletRequest request) {
+        try {
+            UploadSession session = uploadSessionService.appendChunk(id, principal.getUser().getId(), offset,
+                request.getContentLengthLong(), request.getInputStream());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, String.valueOf(session.getReceivedBytes()))
+                    .body(session);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (UploadOffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET, String.valueOf(e.getOffset()))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("Error receiving upload chunk", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Store the complete upload as a file, sha256 (hex) is checked when given
+     */
+    @PostMapping("/{id}/commit")
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<FileMetadata> commitSession(
+            @PathVariable String id,
+            @RequestParam(required = false) String sha256,
+            @AuthenticationPrincipal CustomUserPrincipal principal) {
+        try {
+            return ResponseEntity.ok(uploadSessionService.commit(id, principal.getUser().getId(), sha256));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (StorageQuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).build();
+        } catch (ServerBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
+        } catch (IOException e) {
+            log.error("Error committing upload", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Abandon a session and delete its data
+     */
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('SUPER_ADMIN') or hasRole('ADMIN') or hasRole('DEFAULT')")
+    public ResponseEntity<Void> abortSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal CustomUserPrincipal principal) {
+        try {
+            uploadSessionService.abort(id, principal.getUser().getId());
+            return ResponseEntity.noContent().build();
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.roytemplates.springboot3_api.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -13,10 +14,14 @@ import com.roytemplates.springboot3_api.repository.BusinessRepository;
 import com.roytemplates.springboot3_api.repository.UserRepository;
 import com.roytemplates.springboot3_api.request.UpdateUserRequest;
 import com.roytemplates.springboot3_api.response.RegisterResponse;
+import com.roytemplates.springboot3_api.security.JwtClaims;
+import com.roytemplates.springboot3_api.security.PrincipalCache;
+import com.roytemplates.springboot3_api.security.TokenRevocationService;
 import com.roytemplates.springboot3_api.service.EmailService;
 import com.roytemplates.springboot3_api.service.FileService;
-import com.roytemplates.springboot3_api.service.FileStorageService;
 import com.roytemplates.springboot3_api.service.JwtService;
+import com.roytemplates.springboot3_api.service.ServerBusyException;
+import com.roytemplates.springboot3_api.service.StorageQuotaExceededException;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
@@ -26,6 +31,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @RestController
@@ -44,21 +50,27 @@ public class UserController {
     // Service for email sending
     private final EmailService emailService;
 
-    private final FileStorageService fileStorageService;
 
     private final FileService fileService;
 
     private final BCryptPasswordEncoder passwordEncoder;
 
+    // Cached principals used by the jwt filter, evicted on user changes
+    private final PrincipalCache principalCache;
+
+    // Revokes issued tokens when security relevant fields change
+    private final TokenRevocationService tokenRevocationService;
+
     //  Endpoint to retrieve registered users
     @GetMapping("/")
     public ResponseEntity<List<User>> getRegisteredUsers(@RequestHeader("Authorization") String authHeader) {
         // Extract token
         String token = authHeader.replace("Bearer ", "").trim();
         
-        // Extract role and email from the token
-        String role = jwtService.extractRole(token);
-        String email = jwtService.extractUsername(token);
+        // Extract role and email from the token (single parse)
+        JwtClaims claims = jwtService.verifyToken(token);
+        String role = claims.getRole();
+        String email = claims.getSubject();
         
         if ("SUPER_ADMIN".equals(role)) {
             // Super admin gets all users
@@ -92,7 +104,7 @@ public class UserController {
         String contenType = contentTypeHeader;
         // Extract and verify token information
         String token = authHeader.replace("Bearer ", "").trim();
-        String email = jwtService.extractUsername(token);
+        String email = jwtService.verifyToken(token).getSubject();
 
         Optional<User> callingUserOpt = userRepository.findByEmail(email);
         if (callingUserOpt.isEmpty()) {
@@ -106,6 +118,8 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
         User userToUpdate = userOpt.get();
+        // replaced picture, deleted once the user is saved
+        String previousPicture = userToUpdate.getProfilePicture();
 
         // allowed for all. the user is updating his own allowed presonal fields
         if (callingUser.getBusinessID().equals(userToUpdate.getBusinessID())) {
@@ -132,11 +146,6 @@ public class UserController {
             if (updateRequest.getProfilePicture() != null) {
                
                 try {
-                // Validate file type and size
-                if (!fileStorageService.validateImageFile(updateRequest.getProfilePicture())) {
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-                }
-
                 // Upload a public image to the file storage service
                 FileMetadata metadata = fileService.uploadImagePublic(updateRequest.getProfilePicture(), userToUpdate.getBusinessID(), userToUpdate.getId());
                 String imageUrl = metadata.getStoredFilename();
@@ -144,6 +153,18 @@ public class UserController {
                 // Update the user's profile picture
                 userToUpdate.setProfilePicture(imageUrl);
 
+                }
+                catch (IllegalArgumentException e) {
+                    // not an image, or too large to decode
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+                }
+                catch (StorageQuotaExceededException e) {
+                    return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(null);
+                }
+                catch (ServerBusyException e) {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                            .body(null);
                 }
                 catch (Exception e) {
                     return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -154,15 +175,20 @@ public class UserController {
 
         }
 
+        // tokens embed role, status and business, revoke them if any of these (or the password) changes
+        boolean revokeTokens = false;
+
         // ADMIN and SUPER_ADMIN can update the role and profileStatus
         if (callingUser.getRole() == UserRole.ADMIN || callingUser.getRole() == UserRole.SUPER_ADMIN) {
             if (updateRequest.getRole() != null) {
+                revokeTokens |= updateRequest.getRole() != userToUpdate.getRole();
                 userToUpdate.setRole(updateRequest.getRole());
             }
         }
 
         if (callingUser.getRole() == UserRole.SUPER_ADMIN) {
             if (updateRequest.getProfileStatus() != null) {
+                revokeTokens |= updateRequest.getProfileStatus() != userToUpdate.getProfileStatus();
                 userToUpdate.setProfileStatus(updateRequest.getProfileStatus());
             }
         }
@@ -178,6 +204,7 @@ public class UserController {
             (userToUpdate.getBusinessID() == null || userToUpdate.getBusinessID().isEmpty())) {
             
             userToUpdate.setBusinessID( updateRequest.getBusinessID());
+            revokeTokens = true;
         }
             
         // either the calling user or the business admin can change the user's password
@@ -207,9 +234,18 @@ public class UserController {
             else {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             }
+            revokeTokens = true;
+        }
+
+        if (revokeTokens) {
+            tokenRevocationService.revokeTokens(userToUpdate);
         }
 
         User updatedUser = userRepository.save(userToUpdate);
+        if (!Objects.equals(previousPicture, updatedUser.getProfilePicture())) {
+            fileService.deleteReplacedFile(previousPicture);
+        }
+        principalCache.evictUser(updatedUser.getEmail());
         return ResponseEntity.ok(updatedUser);
     }
 
@@ -221,7 +257,7 @@ public class UserController {
                                         @RequestHeader("Authorization") String authHeader) {
         // Extract token and verify that the caller is an ADMIN.
         String token = authHeader.replace("Bearer ", "").trim();
-        String adminEmail = jwtService.extractUsername(token);
+        String adminEmail = jwtService.verifyToken(token).getSubject();
 
         // Retrieve the calling admin's user record.
         Optional<User> adminOpt = userRepository.findByEmail(adminEmail);
@@ -258,7 +294,9 @@ public class UserController {
 
         // Set the user's businessID to the admin's businessID and save the update.
         userToInvite.setBusinessID(adminUser.getBusinessID());
+        tokenRevocationService.revokeTokens(userToInvite);
         userRepository.save(userToInvite);
+        principalCache.evictUser(userToInvite.getEmail());
 
         // Send an invitation email to the user.
         String subject = "You have been invited to join Springboot3 API app : " + business.getName();
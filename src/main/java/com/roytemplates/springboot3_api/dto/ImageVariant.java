@@ -0,0 +1,64 @@
+package com.roytemplates.springboot3_api.dto;
+
+import lombok.Value;
+
+import java.util.Locale;
+
+import com.roytemplates.springboot3_api.config.ImageVariantProperties;
+
+/**
+ * A requested image variant: bounding box, fit mode and encoding quality.
+ * Width or height may be null to scale by the other one. Images are never upscaled.
+ */
+@Value
+public class ImageVariant {
+
+    public enum Fit {
+        // scale to fit inside the box, keeping the aspect ratio
+        CONTAIN,
+        // scale to fill the box and crop the overflow (center)
+        COVER
+    }
+
+    Integer width;
+    Integer height;
+    Fit fit;
+    int quality;
+
+    /**
+     * Validates the request parameters against the whitelist.
+     *
+     * @return The variant, or null if no variant parameter was given (the original is served)
+     * @throws IllegalArgumentException if a parameter is not allowed
+     */
+    public static ImageVariant of(Integer width, Integer height, String fit, Integer quality, ImageVariantProperties properties) {
+        if (width == null && height == null && fit == null && quality == null) {
+            return null;
+        }
+        if (width == null && height == null) {
+            throw new IllegalArgumentException("Width or height is required");
+        }
+        if ((width != null && !properties.getSizes().contains(width))
+                || (height != null && !properties.getSizes().contains(height))) {
+            throw new IllegalArgumentException("Size not allowed");
+        }
+        if (quality != null && !properties.getQualities().contains(quality)) {
+            throw new IllegalArgumentException("Quality not allowed");
+        }
+        Fit fitMode;
+        try {
+            fitMode = fit != null ? Fit.valueOf(fit.toUpperCase(Locale.ROOT)) : Fit.CONTAIN;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Fit not allowed");
+        }
+        return new ImageVariant(width, height, fitMode, quality != null ? quality : properties.getDefaultQuality());
+    }
+
+    // Stable name of the variant, used in cache keys and ETags
+    public String key() {
+        return "w" + (width != null ? width : 0)
+            + "_h" + (height != null ? height : 0)
+            + "_" + fit.name().toLowerCase(Locale.ROOT)
+            + "_q" + quality;
+    }
+}
@@ -0,0 +1,40 @@
+package com.roytemplates.springboot3_api.dto;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursor: the (timestamp, id) of the last item of a page.
+ * The next page starts strictly after it in (timestamp desc, id desc) order.
+ * Encoded as url safe Base64 so clients treat it as an opaque string.
+ */
+@Value
+public class PageCursor {
+
+    Instant timestamp;
+    String id;
+
+    public String encode() {
+        String raw = timestamp.toEpochMilli() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static PageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            Instant timestamp = Instant.ofEpochMilli(Long.parseLong(raw.substring(0, separator)));
+            return new PageCursor(timestamp, raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.time.Instant;
 
+import com.roytemplates.springboot3_api.model.MediaStatus;
+
 /**
  * Data Transfer Object for Post with additional isLiked field.
  */
@@ -25,5 +27,6 @@ public class PostDTO {
     private Integer likes;
     private String businessId;
     private String imageUrl;
+    private MediaStatus mediaStatus;
     private boolean isLiked;
 }
\ No newline at end of file
@@ -5,23 +5,21 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.roytemplates.springboot3_api.model.Business;
 import com.roytemplates.springboot3_api.model.ProfileStatus;
 import com.roytemplates.springboot3_api.model.User;
 import com.roytemplates.springboot3_api.model.UserRole;
-import com.roytemplates.springboot3_api.repository.BusinessRepository;
-import com.roytemplates.springboot3_api.repository.UserRepository;
+import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
+import com.roytemplates.springboot3_api.security.JwtClaims;
+import com.roytemplates.springboot3_api.security.PrincipalCache;
+import com.roytemplates.springboot3_api.security.TokenRevocationService;
 import com.roytemplates.springboot3_api.service.JwtService;
 
 /**
@@ -32,7 +30,7 @@ import com.roytemplates.springboot3_api.service.JwtService;
  *
  * <p>This class extends {@code OncePerRequestFilter}, ensuring that it is executed exactly 
  * once per request within a single request thread. It depends on a {@code JwtService} 
- * for token validation/extraction and a {@code UserDetailsService} to load user information.
+ * for token validation/extraction and a {@code PrincipalCache} to resolve user information.
  */
 
 /**
@@ -41,8 +39,8 @@ import com.roytemplates.springboot3_api.service.JwtService;
  */
 
 /**
- * Loads user-specific data, typically from a persistence mechanism, by their username 
- * for authentication and verification purposes.
+ * Resolves the user principal and business state by subject through a bounded TTL cache,
+ * so authenticated requests don't hit Mongo on every call.
  */
 
 /**
@@ -63,13 +61,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtService jwtService;
 
     @Autowired
-    private UserDetailsService customUserDetailsService; // Ensure it's your CustomUserDetailsService
-    
-    @Autowired
-    private BusinessRepository businessRepository;
+    private PrincipalCache principalCache;
 
     @Autowired
-    private UserRepository userRepository;
+    private TokenRevocationService tokenRevocationService;
 
 
     @Override
@@ -92,37 +87,60 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
 
-        String jwt = null;
+        JwtClaims claims = null;
         String username = null;
 
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            jwt = authHeader.substring(7).trim();
-            username = jwtService.extractUsername(jwt);
+            // Parse and verify the token once, the claims are reused below
+            claims = jwtService.verifyToken(authHeader.substring(7).trim());
+            username = claims.getSubject();
         }
 
-        // If username is found and we're not authenticated yet, load user details and set authentication object.
+        // Stateless tokens carry the status and business claims, authorize them without any lookup.
+        if (username != null && claims.isStateless() && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (tokenRevocationService.isRevoked(claims)) {
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token revoked");
+                return;
+            }
+            CustomUserPrincipal principal = CustomUserPrincipal.fromClaims(claims);
+            User user = principal.getUser();
+
+            //Check user profile status and business deleted status
+            if ( !user.getRole().equals(UserRole.SUPER_ADMIN) &&
+                 (user.getProfileStatus() != ProfileStatus.ACTIVE
+                    || tokenRevocationService.isBusinessDeleted(user.getBusinessID()))
+               ) {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN, "Access Denied");
+                return;
+            }
+
+            UsernamePasswordAuthenticationToken authToken =
+                    new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
+        }
+
+        // If username is found and we're not authenticated yet, resolve the principal and set authentication object.
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
-            if (jwtService.validateToken(jwt, userDetails)) {
-                // Retrieve User and Business entities
-                Optional<User> userOptional = userRepository.findByEmail(username);
-                if (userOptional.isEmpty()) {
-                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "User not found");
-                    return;
-                }
-                User user = userOptional.get();
-                Business business = businessRepository.findById(user.getBusinessID()).orElse(null);
+            PrincipalCache.Entry entry = principalCache.get(username);
+            if (entry == null) {
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "User not found");
+                return;
+            }
+            CustomUserPrincipal principal = entry.getPrincipal();
+            if (jwtService.validateToken(claims, principal)) {
+                User user = principal.getUser();
         
                 //Check user profile status and business deleted status
                 if ( !user.getRole().equals(UserRole.SUPER_ADMIN) &&
-                     (user.getProfileStatus() != ProfileStatus.ACTIVE || business.isDeleted())
+                     (user.getProfileStatus() != ProfileStatus.ACTIVE || entry.isBusinessDeleted())
                    ) {
                     response.sendError(HttpServletResponse.SC_FORBIDDEN, "Access Denied");
                     return;
                 }
         
                 UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                        new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
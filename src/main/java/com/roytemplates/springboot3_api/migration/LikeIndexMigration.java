@@ -0,0 +1,88 @@
+package com.roytemplates.springboot3_api.migration;
+
+import org.bson.Document;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+import com.roytemplates.springboot3_api.model.Like;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Prepares the likes collection for atomic like/unlike:
+ * 1. deletes the soft-unliked documents (liked=false) left by the old toggle
+ * 2. removes duplicate (userId, postId) documents created by racing toggles
+ * 3. creates the unique (userId, postId) index, replacing the old non unique one
+ *
+ * Runs at startup and is idempotent.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikeIndexMigration implements ApplicationRunner {
+
+    private static final String INDEX_NAME = "user_post";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        IndexOperations indexOps = mongoTemplate.indexOps(Like.class);
+        IndexInfo existing = indexOps.getIndexInfo().stream()
+                .filter(index -> INDEX_NAME.equals(index.getName()))
+                .findFirst()
+                .orElse(null);
+        if (existing != null && existing.isUnique()) {
+            return;
+        }
+
+        long unliked = mongoTemplate.remove(Query.query(Criteria.where("liked").is(false)), Like.class)
+                .getDeletedCount();
+        if (unliked > 0) {
+            log.info("Deleted {} soft-unliked likes", unliked);
+        }
+
+        removeDuplicates();
+
+        if (existing != null) {
+            indexOps.dropIndex(INDEX_NAME);
+        }
+        indexOps.ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("postId", Sort.Direction.ASC)
+                .unique()
+                .named(INDEX_NAME));
+        log.info("Created unique likes index {}", INDEX_NAME);
+    }
+
+    // Keeps one like per (userId, postId)
+    private void removeDuplicates() {
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.group("userId", "postId").count().as("count").push("_id").as("ids"),
+            Aggregation.match(Criteria.where("count").gt(1))
+        ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        long removed = 0;
+        for (Document duplicate : mongoTemplate.aggregate(aggregation, Like.class, Document.class)) {
+            List<?> ids = duplicate.getList("ids", Object.class);
+            removed += mongoTemplate.remove(
+                Query.query(Criteria.where("_id").in(ids.subList(1, ids.size()))), Like.class)
+                .getDeletedCount();
+        }
+        if (removed > 0) {
+            log.info("Deleted {} duplicate likes", removed);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.roytemplates.springboot3_api.migration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.roytemplates.springboot3_api.config.StorageShardingProperties;
+import com.roytemplates.springboot3_api.service.FileStorageService;
+import com.roytemplates.springboot3_api.service.LocalBlobStore;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves the files of the legacy flat layout (directly in UPLOAD_PATH) to the sharded layout
+ * (UPLOAD_PATH/ab/cd/<name>), files.sharding.migration.batch-size files every interval-ms
+ * so the disk stays available for the traffic. Only with the local blob store.
+ *
+ * Runs online: reads fall back to the flat location until a file is moved. A file is moved by hard linking
+ * it into the sharded layout, new reads find it there, and its flat name is removed on a later run,
+ * files.sharding.migration.unlink-delay-seconds after, once the downloads that resolved the flat path
+ * (sendfile opens it after the request returns) are done. A file linked or deleted by another node is
+ * skipped. A file that can't be moved is logged once and left in the flat layout (still readable there)
+ * until the next start. Stops once the root holds no more files to move.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "files.storage.type", havingValue = "local", matchIfMissing = true)
+@RequiredArgsConstructor
+public class StorageShardingMigration {
+
+    private final LocalBlobStore localBlobStore;
+    private final FileStorageService fileStorageService;
+    private final StorageShardingProperties properties;
+
+    private volatile boolean done;
+    private long moved;
+
+    // files whose move failed, skipped by the next batches
+    private final Set<Path> failed = new HashSet<>();
+
+    // flat names of the linked files -> when they can be removed, in link order
+    private final Map<Path, Long> linked = new LinkedHashMap<>();
+
+    @Scheduled(fixedDelayString = "${files.sharding.migration.interval-ms:1000}", initialDelay = 10000)
+    public synchronized void migrateBatch() {
+        if (done || !properties.isEnabled()) {
+            return;
+        }
+
+        unlinkDue();
+
+        List<Path> batch;
+        try (Stream<Path> files = Files.list(localBlobStore.getRoot())) {
+            // shard and cache directories are skipped, as are uploads in progress
+            batch = files.filter(Files::isRegularFile)
+                    .filter(path -> !fileStorageService.isTempFile(path))
+                    .filter(path -> !failed.contains(path) && !linked.containsKey(path))
+                    .limit(properties.getBatchSize())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("Could not list the storage root", e);
+            return;
+        }
+
+        if (batch.isEmpty()) {
+            if (!linked.isEmpty()) {
+                // flat names still to remove
+                return;
+            }
+            done = true;
+            if (moved > 0 || !failed.isEmpty()) {
+                log.info("Storage sharding migration finished, {} files moved, {} left in place", moved, failed.size());
+            }
+            return;
+        }
+
+        long unlinkAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(properties.getUnlinkDelaySeconds());
+        for (Path path : batch) {
+            Path target = localBlobStore.shardedPath(path.getFileName().toString());
+            try {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.createLink(target, path);
+                } catch (FileAlreadyExistsException e) {
+                    // linked by another node, or before a restart
+                    if (!Files.isSameFile(target, path)) {
+                        throw e;
+                    }
+                }
+                linked.put(path, unlinkAt);
+                moved++;
+            } catch (NoSuchFileException e) {
+                // moved by another node or deleted meanwhile
+            } catch (IOException e) {
+                failed.add(path);
+                log.error("Could not move {} to {}, left in place", path, target, e);
+            }
+        }
+        log.info("Storage sharding migration: {} files moved", moved);
+    }
+
+    /**
+     * Remove the flat names of the files linked at least unlink-delay-seconds ago
+     */
+    private void unlinkDue() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Long>> entries = linked.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Long> entry = entries.next();
+            if (entry.getValue() > now) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.getKey());
+            } catch (IOException e) {
+                // still readable through both names, listed again on the next start
+                log.warn("Could not remove the flat name of {}", entry.getKey(), e);
+            }
+            entries.remove();
+        }
+    }
+}
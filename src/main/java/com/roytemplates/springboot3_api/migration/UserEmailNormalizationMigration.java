@@ -0,0 +1,78 @@
+package com.roytemplates.springboot3_api.migration;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Stream;
+
+import com.mongodb.client.result.UpdateResult;
+import com.roytemplates.springboot3_api.model.User;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Backfills User.normalizedEmail for documents created before the field existed.
+ * Runs at startup and is idempotent, only documents missing the field are touched.
+ *
+ * Emails that only differ by case collide on the unique index. Those users are left without
+ * a normalized email, found by their exact email only (see UserRepository.findByEmail), and
+ * logged at every startup until they are merged (or their emails changed) manually.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserEmailNormalizationMigration implements ApplicationRunner {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Query missing = new Query(Criteria.where("normalizedEmail").exists(false).and("email").exists(true));
+
+        try {
+            // Single server side update: normalizedEmail = toLower(trim(email))
+            AggregationUpdate update = AggregationUpdate.update()
+                    .set("normalizedEmail")
+                    .toValue(StringOperators.valueOf(StringOperators.valueOf("email").trim()).toLower());
+            UpdateResult result = mongoTemplate.updateMulti(missing, update, User.class);
+            if (result.getModifiedCount() > 0) {
+                log.info("Backfilled normalized email of {} users", result.getModifiedCount());
+            }
+        } catch (DuplicateKeyException e) {
+            // Some emails collide once lowercased, fall back to one document at a time
+            log.warn("Duplicate normalized emails found, backfilling users one by one");
+            backfillOneByOne(missing);
+        }
+
+        long colliding = mongoTemplate.count(missing, User.class);
+        if (colliding > 0) {
+            log.error("{} users have an email that differs only by case from another user and can only log in "
+                + "with their exact email, merge them", colliding);
+        }
+    }
+
+    private void backfillOneByOne(Query missing) {
+        try (Stream<User> users = mongoTemplate.stream(missing, User.class)) {
+            users.forEach(user -> {
+                try {
+                    mongoTemplate.updateFirst(
+                        Query.query(Criteria.where("id").is(user.getId())),
+                        Update.update("normalizedEmail", User.normalizeEmail(user.getEmail())),
+                        User.class);
+                } catch (DuplicateKeyException e) {
+                    log.error("User {} has an email that differs only by case from another user, not normalized",
+                        user.getId());
+                }
+            });
+        }
+    }
+}
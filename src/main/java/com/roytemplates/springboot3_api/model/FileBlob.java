@@ -0,0 +1,53 @@
+package com.roytemplates.springboot3_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored file, content addressed by the SHA-256 of the uploaded bytes.
+ * Every FileMetadata with the same content points at the same blob, refCount counts them.
+ * Blobs left without reference are collected by FileReclaimer once releasedAt is older than the grace period,
+ * until then a new upload of the same content revives them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "file_blobs")
+@CompoundIndex(name = "unreferenced", def = "{'refCount': 1, 'releasedAt': 1}")
+public class FileBlob {
+
+    // SHA-256 of the uploaded content (FileMetadata.fileHash)
+    @Id
+    private String id;
+
+    // Name of the file in the storage directory
+    private String storageKey;
+
+    private long refCount;
+
+    // Stored size and type, after compression
+    private Long size;
+
+    private String mimeType;
+
+    // Content-Encoding of the stored bytes (gzip), null when stored as uploaded
+    private String contentEncoding;
+
+    // WebP rendition of a JPEG/PNG image, stored when smaller than the image, null otherwise
+    private String webpStorageKey;
+
+    private Long webpSize;
+
+    private LocalDateTime createdAt;
+
+    // Last time a reference was released
+    private LocalDateTime releasedAt;
+}
@@ -1,10 +1,12 @@
 package com.roytemplates.springboot3_api.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -18,6 +20,8 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "files")
+@CompoundIndex(name = "deleted", def = "{'status': 1, 'deletedAt': 1}")
+@CompoundIndex(name = "business_files", def = "{'businessId': 1, 'status': 1, 'uploadDate': -1, '_id': -1}")
 public class FileMetadata {
     
     @Id
@@ -31,10 +35,32 @@ public class FileMetadata {
     
     @Indexed
     private String fileHash;
+
+    // Name of the stored file, shared by every upload of the same content (see FileBlob).
+    // Null for files uploaded before deduplication, stored under their storedFilename.
+    // Not exposed, it is the storedFilename of the first uploader (possibly another business).
+    @JsonIgnore
+    private String storageKey;
     
     private String mimeType;
     
+    // Size of the file as served (decompressed for gzipped files)
     private Long fileSize;
+
+    // Size of the stored bytes when it differs from fileSize (gzipped files), the size charged to the quota
+    @JsonIgnore
+    private Long storedSize;
+
+    // Content-Encoding of the stored bytes (gzip), null when stored as uploaded, see FileBlob
+    @JsonIgnore
+    private String contentEncoding;
+
+    // WebP rendition of the image, served to clients accepting image/webp, see FileBlob
+    @JsonIgnore
+    private String webpStorageKey;
+
+    @JsonIgnore
+    private Long webpSize;
     
     @Indexed
     private String uploadedBy; // User ID
@@ -49,8 +75,25 @@ public class FileMetadata {
     
     private FileStatus status;
 
+    // When the file was soft deleted
+    private LocalDateTime deletedAt;
+
     private boolean publicAccess;
 
+    /**
+     * Name of the file in the storage directory
+     */
+    public String resolveStorageKey() {
+        return storageKey != null ? storageKey : storedFilename;
+    }
+
+    /**
+     * Bytes taken on the storage, charged to the business quota
+     */
+    public long resolveStoredSize() {
+        return storedSize != null ? storedSize : fileSize != null ? fileSize : 0;
+    }
+
     /**
      * Enum representing the type of file
      */
@@ -64,6 +107,8 @@ public class FileMetadata {
      */
     public enum FileStatus {
         ACTIVE,
-        DELETED
+        DELETED,
+        // deleted and its stored file reclaimed (files uploaded before deduplication)
+        PURGED
     }
 }
\ No newline at end of file
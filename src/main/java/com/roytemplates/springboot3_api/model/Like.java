@@ -10,6 +10,9 @@ import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
  * Represents a like relationship between a user and a post.
+ * A document only exists while the post is liked (unlike deletes it).
+ * The unique (userId, postId) index is created by LikeIndexMigration, after cleaning up
+ * the soft-unliked and duplicate documents left by the previous toggle implementation.
  */
 @Data
 @Builder
@@ -0,0 +1,12 @@
+package com.roytemplates.springboot3_api.model;
+
+/**
+ * Processing state of the image of a post created asynchronously.
+ * Posts created before the field existed, or synchronously, are READY.
+ */
+public enum MediaStatus {
+
+    PENDING,
+    READY,
+    FAILED
+}
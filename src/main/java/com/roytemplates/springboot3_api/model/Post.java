@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -24,12 +25,16 @@ import java.time.Instant;
  * - Number of Likes
  * - Business ID
  * - Image URL
+ * - Media Status (image processing state of posts created asynchronously)
+ *
+ * The business_feed index serves the feed ordering for both offset and cursor paging.
  */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "posts")
+@CompoundIndex(name = "business_feed", def = "{'businessId': 1, 'creationDateUtc': -1, '_id': -1}")
 public class Post {
 
     @Id
@@ -50,10 +55,14 @@ public class Post {
     @Indexed
     private String userId;
 
+    @Builder.Default
     private Integer likes = 0;
 
     @Indexed
     private String businessId;
 
     private String imageUrl;
+
+    // null for posts created before asynchronous processing, same as READY
+    private MediaStatus mediaStatus;
 }
\ No newline at end of file
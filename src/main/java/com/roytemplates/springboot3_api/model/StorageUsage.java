@@ -0,0 +1,39 @@
+package com.roytemplates.springboot3_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Storage used by a business, maintained incrementally by StorageQuotaService.
+ * usedBytes includes the reservations of uploads in progress (reservedBytes), so the quota check
+ * is a single conditional update. Drift is corrected by the periodic reconciliation.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "storage_usage")
+public class StorageUsage {
+
+    // Business ID
+    @Id
+    private String id;
+
+    // Size of the active files plus the reservations
+    private long usedBytes;
+
+    // Part of usedBytes reserved by uploads in progress
+    private long reservedBytes;
+
+    private long fileCount;
+
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime reconciledAt;
+}
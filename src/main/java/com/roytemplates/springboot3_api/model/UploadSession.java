@@ -0,0 +1,54 @@
+package com.roytemplates.springboot3_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A resumable upload in progress: chunks are appended in order to a temp file until size bytes
+ * were received, then the upload is committed as a regular file (see UploadSessionService).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    private String businessId;
+
+    @Indexed
+    private String userId;
+
+    private String originalFilename;
+
+    // Declared size of the file, reserved in the storage quota
+    private long size;
+
+    // Bytes received so far, the received range is [0, receivedBytes)
+    private long receivedBytes;
+
+    private boolean publicAccess;
+
+    private Status status;
+
+    private LocalDateTime createdAt;
+
+    // Extended on every chunk, expired sessions are deleted with their data
+    @Indexed
+    private LocalDateTime expiresAt;
+
+    public enum Status {
+        OPEN,
+        COMMITTING
+    }
+}
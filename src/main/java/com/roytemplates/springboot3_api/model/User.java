@@ -2,6 +2,7 @@ package com.roytemplates.springboot3_api.model;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -13,6 +14,7 @@ import jakarta.validation.constraints.Size;
 import java.sql.Date;
 import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Represents a user entity in the system.
@@ -30,6 +32,10 @@ import java.util.List;
  * - Last name: cannot be blank
  * - Email: cannot be blank and must be in valid email format
  * - Password: cannot be blank and must be at least 6 characters long
+ *
+ * Lookups by email go through normalizedEmail (trimmed, lowercased), backed by a unique index.
+ * It is kept in sync by setEmail() and backfilled for old documents by UserEmailNormalizationMigration,
+ * users it could not backfill (emails differing only by case) are looked up by their exact email.
  */
  // @Data for automatic getters, setters, equals, hashCode, and toString methods
  // @Document specifies the MongoDB collection name
@@ -48,8 +54,13 @@ public class User {
 
     @NotBlank(message = "Email is required")
     @Email(message = "Invalid email format")
+    @Indexed // exact lookups of the users left without normalizedEmail
     private String email;
 
+    @JsonIgnore
+    @Indexed(unique = true, sparse = true)
+    private String normalizedEmail;
+
     @NotBlank(message = "Password is required")
     @Size(min = 6, message = "Password must be at least 6 characters")
     @JsonIgnore
@@ -65,10 +76,19 @@ public class User {
     private String nofitications;
     private Instant creationDateUtc;
 
+    // Bumped to revoke every token issued before (checked against the "ver" claim)
+    @JsonIgnore
+    private Long tokenVersion;
+
+    // Last time the token version was bumped, lets other nodes pick up recent revocations
+    @JsonIgnore
+    @Indexed(sparse = true)
+    private Instant tokensRevokedAt;
+
     public User(String firstName, String lastName, String email, String password, UserRole role) {
         this.firstName = firstName;
         this.lastName = lastName;
-        this.email = email;
+        setEmail(email);
         this.password = password;
         this.role = role;
         this.businessID = "";
@@ -82,4 +102,15 @@ public class User {
     }
     public User(){}
 
+    // Sets the email and its normalized (lookup) form
+    public void setEmail(String email) {
+        this.email = email;
+        this.normalizedEmail = normalizeEmail(email);
+    }
+
+    // Normalized form used for the unique lookup index
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
 }
\ No newline at end of file
@@ -15,5 +15,7 @@ public interface BusinessRepository extends MongoRepository<Business, String> {
     Optional<Business> findByAdminID(String id);
 
     List<Business> findByDeletedFalse();
+
+    List<Business> findByDeletedTrue();
     
 }
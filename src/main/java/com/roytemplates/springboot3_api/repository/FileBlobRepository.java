@@ -0,0 +1,13 @@
+package com.roytemplates.springboot3_api.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.roytemplates.springboot3_api.model.FileBlob;
+
+/**
+ * Repository for the content addressed file blobs
+ */
+@Repository
+public interface FileBlobRepository extends MongoRepository<FileBlob, String>, FileBlobRepositoryCustom {
+}
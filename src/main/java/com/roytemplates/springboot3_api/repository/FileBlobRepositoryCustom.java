@@ -0,0 +1,45 @@
+package com.roytemplates.springboot3_api.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import com.roytemplates.springboot3_api.model.FileBlob;
+
+/**
+ * Atomic reference counting on file blobs, see {@link FileBlobRepository}.
+ */
+public interface FileBlobRepositoryCustom {
+
+    /**
+     * Adds a reference to an existing blob, reviving it if it was released but not collected yet.
+     *
+     * @param hash The SHA-256 of the content.
+     * @return The blob after the increment, empty if there is no blob for this content.
+     */
+    Optional<FileBlob> acquire(String hash);
+
+    /**
+     * Registers a newly stored file as the blob of its content with one reference, in a single upsert.
+     * If a concurrent upload registered the same content first, a reference to that blob is added instead.
+     *
+     * @param blob The blob to insert.
+     * @return The blob holding the reference, compare its storageKey to know whether the given one won.
+     */
+    FileBlob register(FileBlob blob);
+
+    /**
+     * Removes a reference from a blob and records when, blobs left without reference are collected later.
+     *
+     * @param hash The SHA-256 of the content.
+     */
+    void release(String hash);
+
+    /**
+     * Removes one blob without reference released before the given time. The removal is the claim:
+     * a single node gets each blob, and it can no longer be revived, so its file can be deleted.
+     *
+     * @param releasedBefore End of the grace period.
+     * @return The removed blob, empty if there is none left.
+     */
+    Optional<FileBlob> claimUnreferenced(LocalDateTime releasedBefore);
+}
@@ -0,0 +1,70 @@
+package com.roytemplates.springboot3_api.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.roytemplates.springboot3_api.model.FileBlob;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * MongoTemplate based implementation of {@link FileBlobRepositoryCustom}.
+ */
+@RequiredArgsConstructor
+public class FileBlobRepositoryCustomImpl implements FileBlobRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Optional<FileBlob> acquire(String hash) {
+        Query query = Query.query(Criteria.where("id").is(hash));
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+            query,
+            new Update().inc("refCount", 1),
+            FindAndModifyOptions.options().returnNew(true),
+            FileBlob.class));
+    }
+
+    @Override
+    public FileBlob register(FileBlob blob) {
+        Update update = new Update()
+            .inc("refCount", 1)
+            .setOnInsert("storageKey", blob.getStorageKey())
+            .setOnInsert("size", blob.getSize())
+            .setOnInsert("mimeType", blob.getMimeType())
+            .setOnInsert("contentEncoding", blob.getContentEncoding())
+            .setOnInsert("webpStorageKey", blob.getWebpStorageKey())
+            .setOnInsert("webpSize", blob.getWebpSize())
+            .setOnInsert("createdAt", blob.getCreatedAt());
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        Query query = Query.query(Criteria.where("id").is(blob.getId()));
+        try {
+            return mongoTemplate.findAndModify(query, update, options, FileBlob.class);
+        } catch (DuplicateKeyException e) {
+            // a concurrent upsert inserted it first, this one now matches it
+            return mongoTemplate.findAndModify(query, update, options, FileBlob.class);
+        }
+    }
+
+    @Override
+    public void release(String hash) {
+        // releasedAt is set on every release, so it holds the time of the one that reached zero
+        mongoTemplate.updateFirst(
+            Query.query(Criteria.where("id").is(hash).and("refCount").gt(0)),
+            new Update().inc("refCount", -1).set("releasedAt", LocalDateTime.now()),
+            FileBlob.class);
+    }
+
+    @Override
+    public Optional<FileBlob> claimUnreferenced(LocalDateTime releasedBefore) {
+        return Optional.ofNullable(mongoTemplate.findAndRemove(
+            Query.query(Criteria.where("refCount").is(0).and("releasedAt").lte(releasedBefore)),
+            FileBlob.class));
+    }
+}
@@ -12,17 +12,22 @@ import java.util.Optional;
  * Repository for managing file metadata in MongoDB
  */
 @Repository
-public interface FileMetadataRepository extends MongoRepository<FileMetadata, String> {
+public interface FileMetadataRepository extends MongoRepository<FileMetadata, String>, FileMetadataRepositoryCustom {
     
     /**
      * Find file by its stored filename
      */
     Optional<FileMetadata> findByStoredFilename(String storedFilename);
+
+    /**
+     * Find file by its stored filename, only with the given status
+     */
+    Optional<FileMetadata> findByStoredFilenameAndStatus(String storedFilename, FileMetadata.FileStatus status);
     
     /**
-     * Find file by its hash
+     * Find the files with the given content hash, they share one stored blob
      */
-    Optional<FileMetadata> findByFileHash(String fileHash);
+    List<FileMetadata> findByFileHash(String fileHash);
     
     /**
      * Find all files for a specific business
@@ -34,11 +39,6 @@ public interface FileMetadataRepository extends MongoRepository<FileMetadata, St
      */
     List<FileMetadata> findByUploadedBy(String userId);
     
-    /**
-     * Find all active files for a specific business
-     */
-    List<FileMetadata> findByBusinessIdAndStatus(String businessId, FileMetadata.FileStatus status);
-    
     /**
      * Check if a file hash already exists
      */
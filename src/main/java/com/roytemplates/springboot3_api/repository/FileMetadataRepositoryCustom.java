@@ -0,0 +1,46 @@
+package com.roytemplates.springboot3_api.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import com.roytemplates.springboot3_api.dto.PageCursor;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+
+/**
+ * Atomic status changes and keyset paging on file metadata, see {@link FileMetadataRepository}.
+ */
+public interface FileMetadataRepositoryCustom {
+
+    /**
+     * Soft deletes an active file.
+     *
+     * @param fileId The ID of the file.
+     * @return true if the file was active, so its blob reference must be released once.
+     */
+    boolean markDeleted(String fileId);
+
+    /**
+     * Marks PURGED one deleted file uploaded before deduplication (no blob, its stored file is its own),
+     * deleted before the given time. The update is the claim, a single node gets each file.
+     *
+     * @param deletedBefore End of the grace period.
+     * @return The file before the update, empty if there is none left.
+     */
+    Optional<FileMetadata> claimDeletedUnshared(LocalDateTime deletedBefore);
+
+    /**
+     * One page of the active files of a business, newest first, served by the business_files index.
+     *
+     * @param businessId The business.
+     * @param fileType Only files of this type, null for all.
+     * @param mimePrefix Only files whose MIME type starts with it, null for all.
+     * @param after Cursor of the last file of the previous page, null for the first page.
+     * @param fields Fields to load, null for all. The id and upload date are always loaded for the cursor.
+     * @param limit Page size.
+     * @throws IllegalArgumentException if the cursor does not reference a file id
+     */
+    List<FileMetadata> findBusinessFilesAfter(String businessId, FileMetadata.FileType fileType, String mimePrefix,
+                                              PageCursor after, Collection<String> fields, int limit);
+}
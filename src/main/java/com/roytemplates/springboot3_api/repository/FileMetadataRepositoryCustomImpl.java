@@ -0,0 +1,84 @@
+package com.roytemplates.springboot3_api.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.roytemplates.springboot3_api.dto.PageCursor;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * MongoTemplate based implementation of {@link FileMetadataRepositoryCustom}.
+ */
+@RequiredArgsConstructor
+public class FileMetadataRepositoryCustomImpl implements FileMetadataRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean markDeleted(String fileId) {
+        Query query = Query.query(Criteria.where("id").is(fileId).and("status").is(FileMetadata.FileStatus.ACTIVE));
+        Update update = Update.update("status", FileMetadata.FileStatus.DELETED).set("deletedAt", LocalDateTime.now());
+        return mongoTemplate.updateFirst(query, update, FileMetadata.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public Optional<FileMetadata> claimDeletedUnshared(LocalDateTime deletedBefore) {
+        // files deleted before deletedAt existed are past any grace period
+        Query query = Query.query(new Criteria().andOperator(
+            Criteria.where("status").is(FileMetadata.FileStatus.DELETED),
+            Criteria.where("storageKey").is(null),
+            new Criteria().orOperator(
+                Criteria.where("deletedAt").lte(deletedBefore),
+                Criteria.where("deletedAt").exists(false))));
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+            query, Update.update("status", FileMetadata.FileStatus.PURGED), FileMetadata.class));
+    }
+
+    @Override
+    public List<FileMetadata> findBusinessFilesAfter(String businessId, FileMetadata.FileType fileType, String mimePrefix,
+                                                     PageCursor after, Collection<String> fields, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("businessId").is(businessId).and("status").is(FileMetadata.FileStatus.ACTIVE));
+        if (fileType != null) {
+            criteria.add(Criteria.where("fileType").is(fileType));
+        }
+        if (mimePrefix != null) {
+            criteria.add(Criteria.where("mimeType").regex("^" + Pattern.quote(mimePrefix)));
+        }
+
+        // (uploadDate, _id) < cursor, in the index sort order
+        if (after != null) {
+            if (!ObjectId.isValid(after.getId())) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime uploadDate = LocalDateTime.ofInstant(after.getTimestamp(), ZoneOffset.UTC);
+            criteria.add(new Criteria().orOperator(
+                Criteria.where("uploadDate").lt(uploadDate),
+                Criteria.where("uploadDate").is(uploadDate)
+                        .and("id").lt(new ObjectId(after.getId()))
+            ));
+        }
+
+        Query query = Query.query(new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.DESC, "uploadDate", "id"))
+                .limit(limit);
+        if (fields != null) {
+            fields.forEach(field -> query.fields().include(field));
+            query.fields().include("id", "uploadDate");
+        }
+        return mongoTemplate.find(query, FileMetadata.class);
+    }
+}
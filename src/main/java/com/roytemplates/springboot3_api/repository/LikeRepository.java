@@ -1,15 +1,29 @@
 package com.roytemplates.springboot3_api.repository;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import com.roytemplates.springboot3_api.model.Like;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * Repository interface for Like operations.
  */
-public interface LikeRepository extends MongoRepository<Like, String> {
+public interface LikeRepository extends MongoRepository<Like, String>, LikeRepositoryCustom {
 
     Optional<Like> findByUserIdAndPostId(String userId, String postId);
+
+    /**
+     * Finds the posts liked by a user among the given post ids, in a single $in query
+     * on the (userId, postId) index. Only the postId field is returned.
+     *
+     * @param userId The ID of the user.
+     * @param postIds The IDs of the posts to check (typically one feed page).
+     * @return The active likes of the user for these posts.
+     */
+    @Query(value = "{ 'userId': ?0, 'postId': { $in: ?1 }, 'liked': true }", fields = "{ 'postId': 1 }")
+    List<Like> findLikedByUserIdAndPostIdIn(String userId, Collection<String> postIds);
 }
\ No newline at end of file
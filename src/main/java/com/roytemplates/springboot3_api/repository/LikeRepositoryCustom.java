@@ -0,0 +1,23 @@
+package com.roytemplates.springboot3_api.repository;
+
+/**
+ * Atomic like operations on the likes collection, see {@link LikeRepository}.
+ * A like document only exists while the post is liked, the unique (userId, postId)
+ * index guarantees at most one per user and post.
+ */
+public interface LikeRepositoryCustom {
+
+    /**
+     * Likes a post with a single upsert. Idempotent.
+     *
+     * @return true if the post was not liked before (the caller should increment the counter)
+     */
+    boolean addLike(String userId, String postId);
+
+    /**
+     * Unlikes a post by deleting its like document. Idempotent.
+     *
+     * @return true if the post was liked before (the caller should decrement the counter)
+     */
+    boolean removeLike(String userId, String postId);
+}
@@ -0,0 +1,45 @@
+package com.roytemplates.springboot3_api.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.UpdateResult;
+import com.roytemplates.springboot3_api.model.Like;
+
+/**
+ * MongoTemplate based implementation of {@link LikeRepositoryCustom}.
+ */
+@RequiredArgsConstructor
+public class LikeRepositoryCustomImpl implements LikeRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean addLike(String userId, String postId) {
+        try {
+            // upsert, also revives legacy soft-unliked documents (liked=false)
+            UpdateResult result = mongoTemplate.upsert(
+                byUserAndPost(userId, postId),
+                Update.update("liked", true),
+                Like.class);
+            return result.getUpsertedId() != null || result.getModifiedCount() > 0;
+        } catch (DuplicateKeyException e) {
+            // a concurrent upsert inserted it first
+            return false;
+        }
+    }
+
+    @Override
+    public boolean removeLike(String userId, String postId) {
+        Query query = byUserAndPost(userId, postId).addCriteria(Criteria.where("liked").is(true));
+        return mongoTemplate.remove(query, Like.class).getDeletedCount() > 0;
+    }
+
+    private Query byUserAndPost(String userId, String postId) {
+        return Query.query(Criteria.where("userId").is(userId).and("postId").is(postId));
+    }
+}
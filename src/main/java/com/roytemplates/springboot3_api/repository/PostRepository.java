@@ -7,11 +7,12 @@ import org.springframework.data.mongodb.repository.Query;
 import com.roytemplates.springboot3_api.model.Post;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for managing {@link Post} entities.
  */
-public interface PostRepository extends MongoRepository<Post, String> {
+public interface PostRepository extends MongoRepository<Post, String>, PostRepositoryCustom {
 
     /**
      * Finds posts by user ID.
@@ -22,14 +23,26 @@ public interface PostRepository extends MongoRepository<Post, String> {
     List<Post> findByUserId(String userId);
 
     /**
-     * Finds posts by business ID.
+     * Finds posts by business ID (offset paging, see findByBusinessIdAfter for cursors).
      *
      * @param businessId The ID of the business.
      * @return A list of posts associated with the business.
      */
-    @Query(value = "{ 'businessId': ?0 }", sort = "{ 'creationDateUtc': -1 }")
+    @Query(value = "{ 'businessId': ?0 }", sort = "{ 'creationDateUtc': -1, '_id': -1 }")
     List<Post> findByBusinessId(String businessId, Pageable pageable);
 
+    /**
+     * Finds the feed of a business (offset paging). Posts whose image is not ready
+     * are only returned to their author.
+     *
+     * @param businessId The ID of the business.
+     * @param viewerId The ID of the user reading the feed.
+     * @return A list of posts associated with the business.
+     */
+    @Query(value = "{ 'businessId': ?0, $or: [ { 'mediaStatus': { $in: [ null, 'READY' ] } }, { 'userId': ?1 } ] }",
+           sort = "{ 'creationDateUtc': -1, '_id': -1 }")
+    List<Post> findFeedByBusinessId(String businessId, String viewerId, Pageable pageable);
+
     /**
      * Finds posts by user ID and business ID.
      *
@@ -39,4 +52,13 @@ public interface PostRepository extends MongoRepository<Post, String> {
      */
     @Query(value = "{ 'userId': ?0, 'businessId': ?1 }", sort = "{ 'creationDateUtc': -1 }")
     List<Post> findByUserIdAndBusinessId(String userId, String businessId, Pageable pageable);
+
+    /**
+     * Finds a post with only its business ID loaded, for access checks.
+     *
+     * @param id The ID of the post.
+     * @return The post with only id and businessId set.
+     */
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'businessId': 1 }")
+    Optional<Post> findBusinessIdById(String id);
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.roytemplates.springboot3_api.repository;
+
+import com.roytemplates.springboot3_api.dto.PageCursor;
+import com.roytemplates.springboot3_api.model.MediaStatus;
+import com.roytemplates.springboot3_api.model.Post;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom {@link PostRepository} queries that can't be derived from method names.
+ */
+public interface PostRepositoryCustom {
+
+    /**
+     * Finds a page of a business feed using keyset pagination on (creationDateUtc, _id),
+     * backed by the {businessId, creationDateUtc, _id} index. Unlike offset paging the cost
+     * doesn't grow with depth and concurrent inserts don't shift pages.
+     *
+     * Posts whose image is not ready are only returned to their author.
+     *
+     * @param businessId The ID of the business.
+     * @param viewerId The ID of the user reading the feed.
+     * @param after The cursor of the last post of the previous page, null for the first page.
+     * @param limit The maximum number of posts to return.
+     * @return The posts, newest first.
+     */
+    List<Post> findByBusinessIdAfter(String businessId, String viewerId, PageCursor after, int limit);
+
+    /**
+     * Sets the media status of a post, and its image once processed, if it still has the expected status.
+     *
+     * @param postId The ID of the post.
+     * @param expected The status the post must have.
+     * @param status The new status.
+     * @param imageUrl The stored image, null to leave it unchanged.
+     * @return Whether a post was updated, false if it was deleted or its status changed.
+     */
+    boolean updateMedia(String postId, MediaStatus expected, MediaStatus status, String imageUrl);
+
+    /**
+     * Marks the posts still PENDING since before the given time as FAILED.
+     *
+     * @return The number of posts marked FAILED.
+     */
+    long failPendingMediaBefore(Instant before);
+
+    /**
+     * Atomically adds delta to the likes counter of a post ($inc). A decrement only applies
+     * if the counter stays non negative, a dropped decrement is logged.
+     *
+     * @param postId The ID of the post.
+     * @param delta The amount to add, negative to decrement.
+     */
+    void incrementLikes(String postId, long delta);
+
+    /**
+     * Applies several likes counter deltas in one unordered bulk write,
+     * with the same rules as {@link #incrementLikes(String, long)}.
+     * The other updates are applied when some of them fail.
+     *
+     * @param deltas The delta to add per post ID.
+     * @return The deltas whose update failed, empty if all were written.
+     */
+    Map<String, Long> incrementLikes(Map<String, Long> deltas);
+}
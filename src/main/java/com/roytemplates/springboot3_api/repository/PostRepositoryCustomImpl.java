@@ -0,0 +1,129 @@
+package com.roytemplates.springboot3_api.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.roytemplates.springboot3_api.dto.PageCursor;
+import com.roytemplates.springboot3_api.model.MediaStatus;
+import com.roytemplates.springboot3_api.model.Post;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MongoTemplate based implementation of {@link PostRepositoryCustom}.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PostRepositoryCustomImpl implements PostRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Post> findByBusinessIdAfter(String businessId, String viewerId, PageCursor after, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("businessId").is(businessId));
+
+        // pending or failed images are only visible to the author
+        criteria.add(new Criteria().orOperator(
+            Criteria.where("mediaStatus").in(null, MediaStatus.READY),
+            Criteria.where("userId").is(viewerId)
+        ));
+
+        // (creationDateUtc, _id) < cursor, in the index sort order
+        if (after != null) {
+            if (!ObjectId.isValid(after.getId())) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            criteria.add(new Criteria().orOperator(
+                Criteria.where("creationDateUtc").lt(after.getTimestamp()),
+                Criteria.where("creationDateUtc").is(after.getTimestamp())
+                        .and("id").lt(new ObjectId(after.getId()))
+            ));
+        }
+
+        Query query = Query.query(new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.DESC, "creationDateUtc", "id"))
+                .limit(limit);
+        return mongoTemplate.find(query, Post.class);
+    }
+
+    @Override
+    public boolean updateMedia(String postId, MediaStatus expected, MediaStatus status, String imageUrl) {
+        Update update = Update.update("mediaStatus", status);
+        if (imageUrl != null) {
+            update.set("imageUrl", imageUrl);
+        }
+        Query query = Query.query(Criteria.where("id").is(postId).and("mediaStatus").is(expected));
+        return mongoTemplate.updateFirst(query, update, Post.class).getMatchedCount() > 0;
+    }
+
+    @Override
+    public long failPendingMediaBefore(Instant before) {
+        Query query = Query.query(Criteria.where("mediaStatus").is(MediaStatus.PENDING)
+                .and("creationDateUtc").lt(before));
+        return mongoTemplate.updateMulti(query, Update.update("mediaStatus", MediaStatus.FAILED), Post.class)
+                .getModifiedCount();
+    }
+
+    @Override
+    public void incrementLikes(String postId, long delta) {
+        long matched = mongoTemplate.updateFirst(likesQuery(postId, delta), new Update().inc("likes", delta), Post.class)
+                .getMatchedCount();
+        if (matched == 0 && delta < 0) {
+            log.warn("Dropped a likes decrement of {} on post {}: deleted, or fewer likes stored", -delta, postId);
+        }
+    }
+
+    @Override
+    public Map<String, Long> incrementLikes(Map<String, Long> deltas) {
+        Map<String, Long> failed = new HashMap<>();
+        if (deltas.isEmpty()) {
+            return failed;
+        }
+        // the errors of the bulk write refer to the updates by index
+        List<Map.Entry<String, Long>> updates = new ArrayList<>(deltas.entrySet());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Post.class);
+        updates.forEach(update -> bulk.updateOne(likesQuery(update.getKey(), update.getValue()),
+                new Update().inc("likes", update.getValue())));
+
+        BulkWriteResult result;
+        try {
+            result = bulk.execute();
+        } catch (BulkOperationException e) {
+            // unordered: the updates without an error were applied
+            e.getErrors().forEach(error -> {
+                Map.Entry<String, Long> update = updates.get(error.getIndex());
+                failed.put(update.getKey(), update.getValue());
+            });
+            result = e.getResult();
+        }
+
+        int unmatched = updates.size() - failed.size() - result.getMatchedCount();
+        if (unmatched > 0) {
+            log.warn("Dropped {} likes deltas: posts deleted, or decrements below the stored likes", unmatched);
+        }
+        return failed;
+    }
+
+    // Matches the post, a decrement only if the counter stays non negative
+    private Query likesQuery(String postId, long delta) {
+        Query query = Query.query(Criteria.where("id").is(postId));
+        if (delta < 0) {
+            query.addCriteria(Criteria.where("likes").gte(-delta));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,13 @@
+package com.roytemplates.springboot3_api.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.roytemplates.springboot3_api.model.StorageUsage;
+
+/**
+ * Repository for the per business storage counters
+ */
+@Repository
+public interface StorageUsageRepository extends MongoRepository<StorageUsage, String>, StorageUsageRepositoryCustom {
+}
@@ -0,0 +1,41 @@
+package com.roytemplates.springboot3_api.repository;
+
+import com.roytemplates.springboot3_api.model.StorageUsage;
+
+/**
+ * Atomic updates of the storage counters, see {@link StorageUsageRepository}.
+ */
+public interface StorageUsageRepositoryCustom {
+
+    /**
+     * Reserves space for an upload if the business stays within its quota, in a single conditional update.
+     *
+     * @param businessId The business storing the file.
+     * @param bytes The size of the upload.
+     * @param quotaBytes The quota of the business.
+     * @return false if the reservation would exceed the quota.
+     */
+    boolean reserve(String businessId, long bytes, long quotaBytes);
+
+    /**
+     * Applies changes to the counters, creating them if needed.
+     *
+     * @param businessId The business.
+     * @param usedBytes Change of the used bytes.
+     * @param reservedBytes Change of the reserved bytes.
+     * @param fileCount Change of the file count.
+     */
+    void adjust(String businessId, long usedBytes, long reservedBytes, long fileCount);
+
+    /**
+     * Replaces the counters with recomputed values, only if they did not change since the snapshot.
+     *
+     * @param businessId The business.
+     * @param snapshot The counters read before the values were computed, null if there were none.
+     * @param usedBytes The recomputed used bytes, reservations included.
+     * @param reservedBytes The reserved bytes to keep.
+     * @param fileCount The recomputed file count.
+     * @return false if the counters changed meanwhile.
+     */
+    boolean reconcile(String businessId, StorageUsage snapshot, long usedBytes, long reservedBytes, long fileCount);
+}
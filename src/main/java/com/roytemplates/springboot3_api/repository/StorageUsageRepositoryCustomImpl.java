@@ -0,0 +1,83 @@
+package com.roytemplates.springboot3_api.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.roytemplates.springboot3_api.model.StorageUsage;
+
+import java.time.LocalDateTime;
+
+/**
+ * MongoTemplate based implementation of {@link StorageUsageRepositoryCustom}.
+ */
+@RequiredArgsConstructor
+public class StorageUsageRepositoryCustomImpl implements StorageUsageRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean reserve(String businessId, long bytes, long quotaBytes) {
+        if (bytes > quotaBytes) {
+            return false;
+        }
+        Query query = Query.query(Criteria.where("id").is(businessId).and("usedBytes").lte(quotaBytes - bytes));
+        Update update = new Update()
+            .inc("usedBytes", bytes)
+            .inc("reservedBytes", bytes)
+            .set("updatedAt", LocalDateTime.now());
+        try {
+            // creates the counters of a business without any
+            mongoTemplate.upsert(query, update, StorageUsage.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // the counters exist and are over the quota, or were created concurrently
+            return mongoTemplate.updateFirst(query, update, StorageUsage.class).getModifiedCount() > 0;
+        }
+    }
+
+    @Override
+    public void adjust(String businessId, long usedBytes, long reservedBytes, long fileCount) {
+        mongoTemplate.upsert(
+            Query.query(Criteria.where("id").is(businessId)),
+            new Update()
+                .inc("usedBytes", usedBytes)
+                .inc("reservedBytes", reservedBytes)
+                .inc("fileCount", fileCount)
+                .set("updatedAt", LocalDateTime.now()),
+            StorageUsage.class);
+    }
+
+    @Override
+    public boolean reconcile(String businessId, StorageUsage snapshot, long usedBytes, long reservedBytes, long fileCount) {
+        LocalDateTime now = LocalDateTime.now();
+        if (snapshot == null) {
+            // no counters yet, unless an upload created them meanwhile
+            try {
+                mongoTemplate.insert(StorageUsage.builder()
+                    .id(businessId)
+                    .usedBytes(usedBytes)
+                    .reservedBytes(reservedBytes)
+                    .fileCount(fileCount)
+                    .reconciledAt(now)
+                    .build());
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        Query query = Query.query(Criteria.where("id").is(businessId)
+            .and("usedBytes").is(snapshot.getUsedBytes())
+            .and("reservedBytes").is(snapshot.getReservedBytes())
+            .and("fileCount").is(snapshot.getFileCount()));
+        Update update = new Update()
+            .set("usedBytes", usedBytes)
+            .set("reservedBytes", reservedBytes)
+            .set("fileCount", fileCount)
+            .set("reconciledAt", now);
+        return mongoTemplate.updateFirst(query, update, StorageUsage.class).getModifiedCount() > 0;
+    }
+}
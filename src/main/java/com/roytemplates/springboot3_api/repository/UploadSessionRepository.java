@@ -0,0 +1,13 @@
+package com.roytemplates.springboot3_api.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import com.roytemplates.springboot3_api.model.UploadSession;
+
+/**
+ * Repository for the resumable upload sessions
+ */
+@Repository
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String>, UploadSessionRepositoryCustom {
+}
@@ -0,0 +1,57 @@
+package com.roytemplates.springboot3_api.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import com.roytemplates.springboot3_api.model.UploadSession;
+
+/**
+ * Atomic state changes of upload sessions, see {@link UploadSessionRepository}.
+ */
+public interface UploadSessionRepositoryCustom {
+
+    /**
+     * Records received bytes, only if the session is open and still at the given offset.
+     *
+     * @param id The ID of the session.
+     * @param from The offset the chunk was written at.
+     * @param to The offset after the chunk.
+     * @param expiresAt The new expiry of the session.
+     * @return false if the session changed or is gone.
+     */
+    boolean advance(String id, long from, long to, LocalDateTime expiresAt);
+
+    /**
+     * Marks a complete open session as committing, so it is committed once.
+     *
+     * @param id The ID of the session.
+     * @param userId The owner of the session.
+     * @param size The declared size of the session, all of it must have been received.
+     * @param expiresAt The new expiry of the session, after the commit.
+     * @return The session, empty if it is unknown, not complete or already committing.
+     */
+    Optional<UploadSession> claimForCommit(String id, String userId, long size, LocalDateTime expiresAt);
+
+    /**
+     * Reopens a session whose commit failed.
+     *
+     * @param id The ID of the session.
+     */
+    void reopen(String id);
+
+    /**
+     * Removes an open session.
+     *
+     * @param id The ID of the session.
+     * @return The removed session, empty if it is unknown or committing.
+     */
+    Optional<UploadSession> removeOpen(String id);
+
+    /**
+     * Removes one session expired before the given time. The removal is the claim, a single node gets each session.
+     *
+     * @param now The current time.
+     * @return The removed session, empty if there is none left.
+     */
+    Optional<UploadSession> claimExpired(LocalDateTime now);
+}
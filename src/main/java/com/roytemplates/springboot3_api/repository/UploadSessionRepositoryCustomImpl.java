@@ -0,0 +1,67 @@
+package com.roytemplates.springboot3_api.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.roytemplates.springboot3_api.model.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * MongoTemplate based implementation of {@link UploadSessionRepositoryCustom}.
+ */
+@RequiredArgsConstructor
+public class UploadSessionRepositoryCustomImpl implements UploadSessionRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean advance(String id, long from, long to, LocalDateTime expiresAt) {
+        Query query = Query.query(Criteria.where("id").is(id)
+            .and("status").is(UploadSession.Status.OPEN)
+            .and("receivedBytes").is(from));
+        Update update = Update.update("receivedBytes", to).set("expiresAt", expiresAt);
+        return mongoTemplate.updateFirst(query, update, UploadSession.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public Optional<UploadSession> claimForCommit(String id, String userId, long size, LocalDateTime expiresAt) {
+        Query query = Query.query(Criteria.where("id").is(id)
+            .and("userId").is(userId)
+            .and("status").is(UploadSession.Status.OPEN)
+            .and("size").is(size)
+            .and("receivedBytes").is(size));
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+            query,
+            Update.update("status", UploadSession.Status.COMMITTING).set("expiresAt", expiresAt),
+            FindAndModifyOptions.options().returnNew(true),
+            UploadSession.class));
+    }
+
+    @Override
+    public void reopen(String id) {
+        mongoTemplate.updateFirst(
+            Query.query(Criteria.where("id").is(id).and("status").is(UploadSession.Status.COMMITTING)),
+            Update.update("status", UploadSession.Status.OPEN),
+            UploadSession.class);
+    }
+
+    @Override
+    public Optional<UploadSession> removeOpen(String id) {
+        return Optional.ofNullable(mongoTemplate.findAndRemove(
+            Query.query(Criteria.where("id").is(id).and("status").is(UploadSession.Status.OPEN)),
+            UploadSession.class));
+    }
+
+    @Override
+    public Optional<UploadSession> claimExpired(LocalDateTime now) {
+        return Optional.ofNullable(mongoTemplate.findAndRemove(
+            Query.query(Criteria.where("expiresAt").lt(now)),
+            UploadSession.class));
+    }
+}
@@ -4,21 +4,43 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 
 import com.roytemplates.springboot3_api.model.User;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
 // Interface that extends MongoRepository to handle User entity operations
 // MongoRepository<User, String> specifies the entity type (User) and ID type (String)
 public interface UserRepository extends MongoRepository<User, String> {
-    // Method to find a user by their email address
+    // Method to find a user by their email address (case insensitive, uses the normalizedEmail index)
+    // Users left without normalizedEmail (email colliding by case, see UserEmailNormalizationMigration)
+    // are found by their exact email
     // Returns Optional to safely handle cases where user might not exist
-    Optional<User> findByEmail(String email);
+    default Optional<User> findByEmail(String email) {
+        Optional<User> user = findByNormalizedEmail(User.normalizeEmail(email));
+        return user.isPresent() ? user : findFirstByEmailAndNormalizedEmailExists(email, false);
+    }
 
-    // Method to check if a user with given email exists
+    // Method to check if a user with given email exists (case insensitive, uses the normalizedEmail index)
     // Returns true if user exists, false otherwise
-    Boolean existsByEmail(String email);
+    default Boolean existsByEmail(String email) {
+        return existsByNormalizedEmail(User.normalizeEmail(email))
+            || existsByEmailAndNormalizedEmailExists(email, false);
+    }
+
+    // Index backed lookups, callers should pass User.normalizeEmail(email)
+    Optional<User> findByNormalizedEmail(String normalizedEmail);
+
+    Boolean existsByNormalizedEmail(String normalizedEmail);
+
+    // Exact email lookups of the users without normalizedEmail (email index)
+    Optional<User> findFirstByEmailAndNormalizedEmailExists(String email, boolean exists);
+
+    boolean existsByEmailAndNormalizedEmailExists(String email, boolean exists);
 
     // Method to find all users by their businessID
     List<User> findByBusinessID(String businessId);
 
+    // Method to find users whose tokens were revoked after the given time
+    List<User> findByTokensRevokedAtAfter(Instant since);
+
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.roytemplates.springboot3_api.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+/**
+ * Request body for opening a resumable upload session.
+ */
+@Data
+public class UploadSessionRequest {
+    // Name of the file being uploaded
+    @NotBlank(message = "Filename is required")
+    private String filename;
+
+    // Total size of the file in bytes
+    @Positive(message = "Size must be positive")
+    private long size;
+
+    // Whether the committed file is served by the public endpoint
+    private boolean publicAccess;
+}
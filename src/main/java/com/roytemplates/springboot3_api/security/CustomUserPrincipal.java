@@ -4,7 +4,9 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import com.roytemplates.springboot3_api.model.ProfileStatus;
 import com.roytemplates.springboot3_api.model.User;
+import com.roytemplates.springboot3_api.model.UserRole;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -18,6 +20,19 @@ public class CustomUserPrincipal implements UserDetails {
         this.user = user;
     }
 
+    // Builds a principal from stateless token claims, without a database lookup.
+    // PS: the user only has id, email, role, businessID and profileStatus set.
+    public static CustomUserPrincipal fromClaims(JwtClaims claims) {
+        User user = new User();
+        user.setId(claims.getUserId());
+        user.setEmail(claims.getSubject());
+        user.setRole(UserRole.valueOf(claims.getRole()));
+        user.setBusinessID(claims.getBusinessId() != null ? claims.getBusinessId() : "");
+        user.setProfileStatus(ProfileStatus.valueOf(claims.getProfileStatus()));
+        user.setTokenVersion(claims.getTokenVersion());
+        return new CustomUserPrincipal(user);
+    }
+
     // this is needed for @PreAuthorize("hasRole('xyz')") to work
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
@@ -0,0 +1,58 @@
+package com.roytemplates.springboot3_api.security;
+
+import java.time.Instant;
+
+import io.jsonwebtoken.Claims;
+import lombok.Value;
+
+/**
+ * Immutable view of the claims of a JWT whose signature has already been verified.
+ * Created once per request by {@code JwtService.verifyToken} so callers never re-parse the token.
+ *
+ * Tokens issued with jwt.stateless-claims=true also carry the user id, business id, profile status
+ * and token version, enough to authorize a request without loading the user (see {@link #isStateless()}).
+ */
+@Value
+public class JwtClaims {
+
+    // Claim names of the stateless token format
+    public static final String USER_ID = "uid";
+    public static final String BUSINESS_ID = "businessId";
+    public static final String PROFILE_STATUS = "profileStatus";
+    public static final String TOKEN_VERSION = "ver";
+
+    String subject;
+    String role;
+    Instant issuedAt;
+    Instant expiration;
+
+    // Stateless claims, null for tokens issued without them
+    String userId;
+    String businessId;
+    String profileStatus;
+    Long tokenVersion;
+
+    // Copies the values we use out of the parsed jjwt claims
+    public static JwtClaims from(Claims claims) {
+        Number version = claims.get(TOKEN_VERSION, Number.class);
+        return new JwtClaims(
+            claims.getSubject(),
+            claims.get("role", String.class),
+            claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+            claims.getExpiration() != null ? claims.getExpiration().toInstant() : null,
+            claims.get(USER_ID, String.class),
+            claims.get(BUSINESS_ID, String.class),
+            claims.get(PROFILE_STATUS, String.class),
+            version != null ? version.longValue() : null
+        );
+    }
+
+    public boolean isExpired() {
+        return expiration != null && expiration.isBefore(Instant.now());
+    }
+
+    // True if the token carries everything needed to authorize without a database lookup
+    public boolean isStateless() {
+        return userId != null && role != null && profileStatus != null && tokenVersion != null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.roytemplates.springboot3_api.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.roytemplates.springboot3_api.config.PrincipalCacheProperties;
+import com.roytemplates.springboot3_api.model.Business;
+import com.roytemplates.springboot3_api.model.User;
+import com.roytemplates.springboot3_api.repository.BusinessRepository;
+import com.roytemplates.springboot3_api.repository.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+
+/**
+ * Bounded, TTL based cache of authenticated principals keyed by JWT subject (email).
+ * Lets the JWT filter authenticate requests without hitting Mongo for the user and business.
+ *
+ * Entries must be evicted whenever a user or business changes (profile, role, status, password,
+ * business deletion). Eviction is local to this node, the TTL bounds staleness on the others.
+ * Hit/miss statistics are exported as the "principals" cache metrics.
+ */
+@Component
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final BusinessRepository businessRepository;
+    private final PrincipalCacheProperties properties;
+    private final Cache<String, Entry> cache;
+
+    public PrincipalCache(UserRepository userRepository,
+                          BusinessRepository businessRepository,
+                          PrincipalCacheProperties properties,
+                          MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.businessRepository = businessRepository;
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getTtlSeconds(), TimeUnit.SECONDS)
+                .maximumSize(properties.getMaximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+    }
+
+    /**
+     * Returns the principal for the given subject, loading it from Mongo on a miss.
+     *
+     * @param username The JWT subject (user email)
+     * @return The cached entry, or null if the user does not exist
+     */
+    public Entry get(String username) {
+        if (!properties.isEnabled()) {
+            return load(username);
+        }
+        return cache.get(User.normalizeEmail(username), this::load);
+    }
+
+    /**
+     * Evicts the cached principal of a user, call after the user document changed.
+     */
+    public void evictUser(String username) {
+        if (username != null) {
+            cache.invalidate(User.normalizeEmail(username));
+        }
+    }
+
+    /**
+     * Evicts every cached principal belonging to a business, call after the business changed.
+     */
+    public void evictBusiness(String businessId) {
+        if (businessId != null) {
+            cache.asMap().values().removeIf(entry ->
+                businessId.equals(entry.getPrincipal().getUser().getBusinessID()));
+        }
+    }
+
+    // Loads the user and its business (one query each), returns null if the user does not exist
+    private Entry load(String username) {
+        User user = userRepository.findByEmail(username).orElse(null);
+        if (user == null) {
+            return null;
+        }
+
+        boolean businessDeleted = false;
+        if (user.getBusinessID() != null && !user.getBusinessID().isEmpty()) {
+            businessDeleted = businessRepository.findById(user.getBusinessID())
+                    .map(Business::isDeleted)
+                    .orElse(false);
+        }
+        return new Entry(new CustomUserPrincipal(user), businessDeleted);
+    }
+
+    /**
+     * Resolved authentication state of a subject.
+     */
+    @Value
+    public static class Entry {
+        CustomUserPrincipal principal;
+        boolean businessDeleted;
+    }
+}
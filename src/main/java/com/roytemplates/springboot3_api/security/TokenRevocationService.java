@@ -0,0 +1,151 @@
+package com.roytemplates.springboot3_api.security;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.roytemplates.springboot3_api.model.Business;
+import com.roytemplates.springboot3_api.model.User;
+import com.roytemplates.springboot3_api.repository.BusinessRepository;
+import com.roytemplates.springboot3_api.repository.UserRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory revocation table for stateless tokens.
+ *
+ * Stateless tokens carry the user's token version and business id, so the jwt filter can authorize
+ * them without Mongo. This table lets us still reject them instantly:
+ * - user versions: bumping User.tokenVersion invalidates every token with a lower "ver" claim
+ * - deleted businesses: tokens of soft-deleted businesses are rejected
+ *
+ * Changes made on this node apply immediately, other nodes pick them up on the next refresh
+ * (jwt.revocation.refresh-ms). Entries only need to live as long as a token does (jwt.expiration).
+ */
+@Slf4j
+@Service
+public class TokenRevocationService {
+
+    private final UserRepository userRepository;
+    private final BusinessRepository businessRepository;
+    private final long jwtExpiration;
+
+    // userId -> current token version, only expires (a size bound would evict live revocations)
+    private final Cache<String, Long> userVersions;
+
+    // ids of soft-deleted businesses, replaced as a whole by refresh()
+    private volatile Set<String> deletedBusinesses = ConcurrentHashMap.newKeySet();
+
+    // businessId -> deleted, changes made on this node since the running refresh started reading,
+    // applied again on top of what it read (guarded by this)
+    private final Map<String, Boolean> localBusinessChanges = new HashMap<>();
+
+    private final Object refreshLock = new Object();
+
+    public TokenRevocationService(UserRepository userRepository,
+                                  BusinessRepository businessRepository,
+                                  @Value("${jwt.expiration}") long jwtExpiration) {
+        this.userRepository = userRepository;
+        this.businessRepository = businessRepository;
+        this.jwtExpiration = jwtExpiration;
+        this.userVersions = Caffeine.newBuilder()
+                .expireAfterWrite(jwtExpiration, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Revokes every token issued to the user so far by bumping its token version.
+     * The caller is responsible for saving the user.
+     */
+    public void revokeTokens(User user) {
+        long version = currentVersion(user) + 1;
+        user.setTokenVersion(version);
+        user.setTokensRevokedAt(Instant.now());
+        if (user.getId() != null) {
+            userVersions.put(user.getId(), version);
+        }
+    }
+
+    /**
+     * Records the soft-deleted state of a business.
+     */
+    public synchronized void setBusinessDeleted(String businessId, boolean deleted) {
+        if (deleted) {
+            deletedBusinesses.add(businessId);
+        } else {
+            deletedBusinesses.remove(businessId);
+        }
+        localBusinessChanges.put(businessId, deleted);
+    }
+
+    public boolean isBusinessDeleted(String businessId) {
+        return businessId != null && deletedBusinesses.contains(businessId);
+    }
+
+    // True if the token was issued before the user's last revocation
+    public boolean isRevoked(JwtClaims claims) {
+        Long version = userVersions.getIfPresent(claims.getUserId());
+        return version != null && claims.getTokenVersion() < version;
+    }
+
+    public static long currentVersion(User user) {
+        return user.getTokenVersion() != null ? user.getTokenVersion() : 0L;
+    }
+
+    // Loads the table at startup, tokens of already deleted businesses must be rejected too
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        refresh();
+    }
+
+    // Reloads revocations made by other nodes
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-ms:30000}",
+               initialDelayString = "${jwt.revocation.refresh-ms:30000}")
+    public void refresh() {
+        synchronized (refreshLock) {
+            refreshTables();
+        }
+    }
+
+    private void refreshTables() {
+        try {
+            // changes made before this point are saved, so the query sees them
+            synchronized (this) {
+                localBusinessChanges.clear();
+            }
+            Set<String> deleted = ConcurrentHashMap.newKeySet();
+            for (Business business : businessRepository.findByDeletedTrue()) {
+                deleted.add(business.getId());
+            }
+            // the query may have missed the changes made meanwhile on this node, keep them
+            synchronized (this) {
+                localBusinessChanges.forEach((businessId, isDeleted) -> {
+                    if (isDeleted) {
+                        deleted.add(businessId);
+                    } else {
+                        deleted.remove(businessId);
+                    }
+                });
+                deletedBusinesses = deleted;
+            }
+
+            Instant since = Instant.now().minusMillis(jwtExpiration);
+            for (User user : userRepository.findByTokensRevokedAtAfter(since)) {
+                userVersions.asMap().merge(user.getId(), currentVersion(user), Math::max);
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not refresh token revocation table", e);
+        }
+    }
+}
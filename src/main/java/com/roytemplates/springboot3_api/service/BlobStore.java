@@ -0,0 +1,51 @@
+package com.roytemplates.springboot3_api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Backend storing the content of uploaded files, addressed by storage key.
+ * The implementation is selected with files.storage.type (LocalBlobStore, S3BlobStore).
+ *
+ * Content is always streamed, never held in memory.
+ */
+public interface BlobStore {
+
+    /**
+     * Size and date of a stored blob, and its file when it is on the local disk (zero-copy sends)
+     */
+    @lombok.Value
+    class BlobInfo {
+        String key;
+        long size;
+        long lastModified;
+        Path localPath;
+    }
+
+    /**
+     * Store the content of a local file under a key.
+     * The source may be moved, the caller deletes it if it still exists afterwards.
+     */
+    void put(String key, Path source, String contentType) throws IOException;
+
+    /**
+     * @throws java.nio.file.NoSuchFileException if nothing is stored under the key
+     */
+    BlobInfo stat(String key) throws IOException;
+
+    /**
+     * Stream the whole content of a blob
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Stream a byte range of a blob, bounds inclusive
+     */
+    InputStream open(String key, long start, long end) throws IOException;
+
+    /**
+     * Delete a blob, no-op if it does not exist
+     */
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,358 @@
+package com.roytemplates.springboot3_api.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.dto.ImageVariant;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes stored files to the HTTP response.
+ *
+ * - strong ETag from the content hash, If-None-Match answered with 304 before touching the disk
+ * - stored files never change, public ones are immutable for shared caches,
+ *   private ones are revalidated by the client with their ETag
+ * - Accept-Ranges, Content-Length and Last-Modified on every response
+ * - single byte ranges (Range, If-Range) answered with 206, unsatisfiable ones with 416,
+ *   multiple ranges are answered with the full file
+ * - the body of files on the local disk is sent by Tomcat with sendfile when the connector supports it (no TLS),
+ *   otherwise with FileChannel.transferTo, without copying the file through heap buffers
+ * - files in a remote blob store (S3) are streamed, ranges are fetched with ranged reads
+ * - files stored gzipped are sent as stored (Content-Encoding, zero-copy, ranges over the gzipped bytes)
+ *   to clients accepting gzip, and decompressed on the fly for the others (no ranges, no Content-Length).
+ *   Both get Vary: Accept-Encoding and an ETag of their own.
+ * - images with a WebP rendition (smaller than the image, see FileStorageService) are sent as WebP
+ *   to clients listing image/webp in Accept, with Vary: Accept and an ETag of their own
+ */
+@Service
+@RequiredArgsConstructor
+public class FileDownloadService {
+
+    private static final String PUBLIC_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String PRIVATE_CACHE_CONTROL = "private, no-cache";
+
+    // Request attributes of the Tomcat sendfile support
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Marker returned by parseRange for a syntactically valid range outside of the file
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final BlobStore blobStore;
+    private final ImageVariantService imageVariantService;
+
+    // Resolves the blob to send, only called once the conditional headers did not short-circuit
+    @FunctionalInterface
+    private interface FileSource {
+        BlobStore.BlobInfo resolve() throws IOException;
+    }
+
+    /**
+     * Serve a stored file, honoring If-None-Match, Range and If-Range
+     *
+     * @param metadata Metadata of the file, access already checked
+     * @param publicCache True to let shared caches store the file, false for per user caching only
+     */
+    public void serve(FileMetadata metadata, boolean publicCache, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (metadata.getWebpStorageKey() != null) {
+            // the representation depends on the Accept of the request
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+            if (acceptsType(request.getHeader(HttpHeaders.ACCEPT), "image/webp")) {
+                String etag = metadata.getFileHash() != null ? "\"" + metadata.getFileHash() + "-webp\"" : null;
+                serve(etag, "image/webp", null, false, publicCache,
+                    () -> blobStore.stat(metadata.getWebpStorageKey()), request, response);
+                return;
+            }
+        }
+        String encoding = metadata.getContentEncoding();
+        boolean decode = false;
+        if (encoding != null) {
+            // the representation depends on the Accept-Encoding of the request
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            decode = !acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), encoding);
+        }
+        String etag = metadata.getFileHash() != null
+            ? "\"" + metadata.getFileHash() + (encoding != null && !decode ? "-" + encoding : "") + "\""
+            : null;
+        serve(etag, metadata.getMimeType(), encoding, decode, publicCache,
+            () -> blobStore.stat(metadata.resolveStorageKey()), request, response);
+    }
+
+    /**
+     * Serve a resized variant of a stored image, rendered on the first request (see ImageVariantService)
+     */
+    public void serveVariant(FileMetadata metadata, ImageVariant variant, boolean publicCache,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String etag = metadata.getFileHash() != null ? "\"" + metadata.getFileHash() + "-" + variant.key() + "\"" : null;
+        serve(etag, metadata.getMimeType(), null, false, publicCache,
+            () -> localFile(imageVariantService.getVariant(metadata, variant)), request, response);
+    }
+
+    /**
+     * @param contentEncoding Content-Encoding of the stored bytes, null if stored as uploaded
+     * @param decode True to send the stored bytes decompressed
+     */
+    private void serve(String etag, String mimeType, String contentEncoding, boolean decode, boolean publicCache,
+                       FileSource source, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, publicCache ? PUBLIC_CACHE_CONTROL : PRIVATE_CACHE_CONTROL);
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        BlobStore.BlobInfo blob = source.resolve();
+        long fileSize = blob.getSize();
+        long lastModified = blob.getLastModified();
+
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setContentType(mimeType);
+        if (decode) {
+            sendDecoded(blob, request, response);
+            return;
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (contentEncoding != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+
+        long start = 0;
+        long end = fileSize - 1;
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, fileSize);
+            if (bounds == UNSATISFIABLE) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                return;
+            }
+            if (bounds != null) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length <= 0) {
+            return;
+        }
+
+        Path filePath = blob.getLocalPath();
+        if (filePath == null) {
+            try (InputStream in = blobStore.open(blob.getKey(), start, end)) {
+                in.transferTo(response.getOutputStream());
+            }
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat sends the file itself once the request returns
+            request.setAttribute(SENDFILE_FILENAME, filePath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        transfer(filePath, start, length, response.getOutputStream());
+    }
+
+    /**
+     * Stream a gzipped blob decompressed, its decompressed size is unknown so the response is chunked
+     */
+    private void sendDecoded(BlobStore.BlobInfo blob, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        InputStream stored = blob.getLocalPath() != null
+            ? Files.newInputStream(blob.getLocalPath())
+            : blobStore.open(blob.getKey());
+        try (InputStream in = new GZIPInputStream(stored, 64 * 1024)) {
+            in.transferTo(response.getOutputStream());
+        } finally {
+            stored.close();
+        }
+    }
+
+    private BlobStore.BlobInfo localFile(Path path) throws IOException {
+        return new BlobStore.BlobInfo(path.getFileName().toString(), Files.size(path),
+            Files.getLastModifiedTime(path).toMillis(), path);
+    }
+
+    /**
+     * Copy a region of the file to the response with FileChannel.transferTo
+     */
+    private void transfer(Path filePath, long start, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Parse a single "bytes=" range into inclusive bounds.
+     * Returns null to serve the full file (malformed or multiple ranges), UNSATISFIABLE for 416.
+     */
+    private long[] parseRange(String header, long fileSize) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range, the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, fileSize - suffix);
+                end = fileSize - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (!last.isEmpty() && Long.parseLong(last) < start) {
+                    return null;
+                }
+                end = last.isEmpty() ? fileSize - 1 : Math.min(Long.parseLong(last), fileSize - 1);
+            }
+            if (start >= fileSize) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * If-Range: the range only applies if the representation did not change
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // strong comparison, weak tags never match
+            return ifRange.equals(etag);
+        }
+        try {
+            // HTTP dates have a one second precision
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Accept-Encoding: whether the coding (or "*") is listed with a non zero quality.
+     * Without the header the file is sent decompressed, which every client can read.
+     */
+    private boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean any = false;
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] params = candidate.split(";");
+            String coding = params[0].trim().toLowerCase();
+            boolean accepted = quality(params) > 0;
+            if (coding.equals(encoding) || coding.equals("x-" + encoding)) {
+                return accepted;
+            }
+            if (coding.equals("*")) {
+                any = accepted;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Accept: whether the media type is listed explicitly with a non zero quality.
+     * Wildcards are ignored, clients send them for formats they may not decode.
+     */
+    private boolean acceptsType(String accept, String mediaType) {
+        if (accept == null) {
+            return false;
+        }
+        for (String candidate : accept.split(",")) {
+            String[] params = candidate.split(";");
+            if (params[0].trim().equalsIgnoreCase(mediaType)) {
+                return quality(params) > 0;
+            }
+        }
+        return false;
+    }
+
+    // q parameter of an Accept or Accept-Encoding entry, 1 when absent or malformed
+    private double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * If-None-Match: weak comparison against any of the listed entity tags
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,114 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.FileReclaimerProperties;
+import com.roytemplates.springboot3_api.model.FileBlob;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+import com.roytemplates.springboot3_api.repository.FileBlobRepository;
+import com.roytemplates.springboot3_api.repository.FileMetadataRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Deletes stored files that nothing references anymore, once files.reclaimer.grace-period-minutes passed:
+ * - blobs whose last reference was released (deleted files, replaced logos and profile pictures, deleted posts)
+ * - files uploaded before deduplication and then deleted, they have no blob
+ *
+ * Each run deletes at most files.reclaimer.batch-size files, runs are files.reclaimer.interval-ms apart.
+ * Safe with several nodes: every file is claimed with a single atomic MongoDB operation before its
+ * bytes are deleted, and a claimed blob can no longer be revived by an upload.
+ * A file whose deletion fails after its claim is logged and left on the storage.
+ *
+ * The reclaimed files and bytes are exported as files.reclaimer.files and files.reclaimer.bytes.
+ */
+@Slf4j
+@Service
+public class FileReclaimer {
+
+    private final FileStorageService fileStorageService;
+    private final FileBlobRepository fileBlobRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileReclaimerProperties properties;
+    private final Counter reclaimedFiles;
+    private final Counter reclaimedBytes;
+
+    public FileReclaimer(FileStorageService fileStorageService,
+                         FileBlobRepository fileBlobRepository,
+                         FileMetadataRepository fileMetadataRepository,
+                         FileReclaimerProperties properties,
+                         MeterRegistry meterRegistry) {
+        this.fileStorageService = fileStorageService;
+        this.fileBlobRepository = fileBlobRepository;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.properties = properties;
+        this.reclaimedFiles = Counter.builder("files.reclaimer.files")
+                .description("Stored files deleted because nothing references them")
+                .register(meterRegistry);
+        this.reclaimedBytes = Counter.builder("files.reclaimer.bytes")
+                .description("Bytes of the stored files deleted because nothing references them")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${files.reclaimer.interval-ms:60000}", initialDelay = 30000)
+    public void reclaim() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMinutes(properties.getGracePeriodMinutes()));
+        int claimed = 0;
+        long files = 0;
+        long bytes = 0;
+
+        while (claimed < properties.getBatchSize()) {
+            Optional<FileBlob> blob = fileBlobRepository.claimUnreferenced(cutoff);
+            if (blob.isEmpty()) {
+                break;
+            }
+            claimed++;
+            if (delete(blob.get().getStorageKey())) {
+                files++;
+                bytes += blob.get().getSize() != null ? blob.get().getSize() : 0;
+            }
+            if (blob.get().getWebpStorageKey() != null && delete(blob.get().getWebpStorageKey())) {
+                bytes += blob.get().getWebpSize() != null ? blob.get().getWebpSize() : 0;
+            }
+        }
+
+        while (claimed < properties.getBatchSize()) {
+            Optional<FileMetadata> metadata = fileMetadataRepository.claimDeletedUnshared(cutoff);
+            if (metadata.isEmpty()) {
+                break;
+            }
+            claimed++;
+            if (delete(metadata.get().getStoredFilename())) {
+                files++;
+                bytes += metadata.get().resolveStoredSize();
+            }
+        }
+
+        if (files > 0) {
+            reclaimedFiles.increment(files);
+            reclaimedBytes.increment(bytes);
+            log.info("Reclaimed {} unreferenced files, {} bytes", files, bytes);
+        }
+    }
+
+    private boolean delete(String storageKey) {
+        try {
+            fileStorageService.deleteFile(storageKey);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Could not delete unreferenced file {}, left on the storage", storageKey, e);
+            return false;
+        }
+    }
+}
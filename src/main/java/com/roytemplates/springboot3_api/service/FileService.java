@@ -2,149 +2,200 @@ package com.roytemplates.springboot3_api.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.roytemplates.springboot3_api.dto.PageCursor;
 import com.roytemplates.springboot3_api.model.FileMetadata;
 import com.roytemplates.springboot3_api.model.User;
 import com.roytemplates.springboot3_api.repository.FileMetadataRepository;
 
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Service for handling file operations and business logic
+ *
+ * File metadata lookups are cached in the "fileMetadata" cache, keyed by tenant
+ * ("businessId:fileName", or "public:fileName" for the public endpoint) and evicted on delete.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FileService {
 
+    public static final String METADATA_CACHE = "fileMetadata";
+
+    // Fields clients can select when listing files
+    public static final Set<String> LISTABLE_FIELDS = Set.of(
+        "id", "originalFilename", "storedFilename", "fileHash", "mimeType", "fileSize",
+        "uploadedBy", "uploadDate", "fileType", "publicAccess"
+    );
+
     private final FileStorageService fileStorageService;
     private final FileMetadataRepository fileMetadataRepository;
+    private final CacheManager cacheManager;
+    private final StorageQuotaService storageQuotaService;
 
     /**
      * Upload a generic file
      */
     public FileMetadata uploadFile(MultipartFile file, String businessId, String userId) throws IOException {
-        // Store the file and get metadata
-        FileMetadata metadata = fileStorageService.storeFile(file, businessId, userId);
-        
-        // Save metadata to database
-        return fileMetadataRepository.save(metadata);
+        return upload(file, businessId, userId, false, false);
     }
 
     /**
      * Upload an image file with validation
+     *
+     * @throws IllegalArgumentException if the file is not an image (PNG, JPEG, or WebP)
      */
     public FileMetadata uploadImage(MultipartFile file, String businessId, String userId) throws IOException {
-        // Validate that the file is an image
-        if (!fileStorageService.validateImageFile(file)) {
-            throw new IllegalArgumentException("File must be an image (PNG, JPEG, or WebP)");
-        }
-        
-        // Store the file and get metadata
-        FileMetadata metadata = fileStorageService.storeFile(file, businessId, userId);
-        
-        // Save metadata to database
-        return fileMetadataRepository.save(metadata);
+        return upload(file, businessId, userId, false, true);
     }
 
-        /**
-     * Upload an image file with validation
+    /**
+     * Upload a public image file with validation
+     *
+     * @throws IllegalArgumentException if the file is not an image (PNG, JPEG, or WebP)
      */
     public FileMetadata uploadImagePublic(MultipartFile file, String businessId, String userId) throws IOException {
-        // Validate that the file is an image
-        if (!fileStorageService.validateImageFile(file)) {
-            throw new IllegalArgumentException("File must be an image (PNG, JPEG, or WebP)");
-        }
-        
-        // Store the file and get metadata
-        FileMetadata metadata = fileStorageService.storeFilePublic(file, businessId, userId);
-        
-        // Save metadata to database
-        return fileMetadataRepository.save(metadata);
+        return upload(file, businessId, userId, true, true);
     }
 
     /**
-     * Get file by filename and business with caching
+     * Store a file within the storage quota of the business: its size is reserved before anything
+     * is written, then replaced by the stored size. The upload is read once, images are validated
+     * with the MIME type sniffed while it is staged.
+     *
+     * @throws StorageQuotaExceededException if the business has no room left
      */
-    @Cacheable(value = "files", key = "#fileName")
-    public Resource getFileByNameAndBusiness(String fileName, String businessId) throws IOException {
+    private FileMetadata upload(MultipartFile file, String businessId, String userId, boolean publicAccess,
+                                boolean imageOnly) throws IOException {
+        long reserved = file.getSize();
+        storageQuotaService.reserve(businessId, reserved);
+        FileStorageService.StagedUpload staged = null;
         try {
-
-            FileMetadata metadata = fileMetadataRepository.findByStoredFilename(fileName)
-                .orElseThrow(() -> new RuntimeException("File not found"));
-                
-            // Validate business access
-            if (!metadata.getBusinessId().equals(businessId)) {
-                throw new AccessDeniedException("Access denied to file");
+            staged = fileStorageService.stageFile(file);
+            if (imageOnly && !fileStorageService.isImage(staged)) {
+                throw new IllegalArgumentException("File must be an image (PNG, JPEG, or WebP)");
             }
-            
-            Path filePath = fileStorageService.loadFileAsResource(metadata.getStoredFilename());
-            return new UrlResource(filePath.toUri());
 
-        } catch (IOException e) {
-            log.error("Error loading file", e);
+            // Store the file and get metadata
+            FileMetadata metadata = fileStorageService.commitFile(staged, businessId, userId, publicAccess);
+
+            // Save metadata to database
+            return saveCommitted(metadata, businessId, reserved);
+        } catch (IOException | RuntimeException e) {
+            storageQuotaService.cancel(businessId, reserved);
             throw e;
+        } finally {
+            if (staged != null) {
+                fileStorageService.discard(staged);
+            }
         }
     }
 
     /**
-     * Get public file by name with caching
+     * Save the metadata of a committed file and replace its reservation by its size.
+     * If this fails the commit is undone: the metadata is removed and the blob reference taken
+     * by commitFile released, the reservation is left to the caller.
      */
-    @Cacheable(value = "files", key = "#fileName")
-    public Resource getFileByName(String fileName) throws IOException {
+    private FileMetadata saveCommitted(FileMetadata metadata, String businessId, long reserved) {
+        FileMetadata saved = null;
         try {
-
-            FileMetadata metadata = fileMetadataRepository.findByStoredFilename(fileName)
-                .orElseThrow(() -> new RuntimeException("File not found"));
-            
-            if (metadata.isPublicAccess()) {
-
-                Path filePath = fileStorageService.loadFileAsResource(metadata.getStoredFilename());
-                return new UrlResource(filePath.toUri());
-
-            } else {
-                throw new AccessDeniedException("Access denied to file");
+            saved = fileMetadataRepository.save(metadata);
+            storageQuotaService.commit(businessId, reserved, saved.resolveStoredSize());
+            return saved;
+        } catch (RuntimeException e) {
+            try {
+                if (saved != null) {
+                    fileMetadataRepository.deleteById(saved.getId());
+                }
+                fileStorageService.releaseFile(metadata);
+            } catch (RuntimeException undo) {
+                log.error("Could not undo the commit of {}", metadata.getStoredFilename(), undo);
+                e.addSuppressed(undo);
             }
-
-        } catch (IOException e) {
-            log.error("Error loading file", e);
             throw e;
         }
     }
 
     /**
-     * Get file by ID with caching
+     * Validate and stage an image upload, to be committed later (see commitImage).
+     * Its size stays reserved in the quota of the business until it is committed or cancelled.
+     *
+     * @throws StorageQuotaExceededException if the business has no room left
      */
-    @Cacheable(value = "files", key = "#fileId")
-    public Resource getFileById(String fileId) throws IOException {
+    public FileStorageService.StagedUpload stageImage(MultipartFile file, String businessId) throws IOException {
+        long reserved = file.getSize();
+        storageQuotaService.reserve(businessId, reserved);
+        FileStorageService.StagedUpload staged;
         try {
-
-            FileMetadata metadata = fileMetadataRepository.findById(fileId)
-                .orElseThrow(() -> new RuntimeException("File not found"));
-            
-            Path filePath = fileStorageService.loadFileAsResource(metadata.getStoredFilename());
-            return new UrlResource(filePath.toUri());
-
-        } catch (IOException e) {
-            log.error("Error loading file", e);
+            staged = fileStorageService.stageFile(file);
+        } catch (IOException | RuntimeException e) {
+            storageQuotaService.cancel(businessId, reserved);
             throw e;
         }
+        if (staged.getSize() != reserved) {
+            // keep the reservation equal to the staged size
+            storageQuotaService.cancel(businessId, reserved - staged.getSize());
+        }
+        if (!fileStorageService.isImage(staged)) {
+            cancelStagedImage(staged, businessId);
+            throw new IllegalArgumentException("File must be an image (PNG, JPEG, or WebP)");
+        }
+        return staged;
+    }
+
+    /**
+     * Store a staged image and save its metadata, the staged upload and its reservation are kept if this fails
+     */
+    public FileMetadata commitImage(FileStorageService.StagedUpload staged, String businessId, String userId) throws IOException {
+        return commitUpload(staged, businessId, userId, false);
     }
 
     /**
-     * Get file metadata by ID
+     * Store a staged upload whose size is reserved in the quota and save its metadata,
+     * the staged upload and its reservation are kept if this fails. A failed commit is undone,
+     * so it can be retried (once stored, the content is found again by its hash).
      */
+    public FileMetadata commitUpload(FileStorageService.StagedUpload staged, String businessId, String userId,
+                                     boolean publicAccess) throws IOException {
+        FileMetadata metadata = fileStorageService.commitFile(staged, businessId, userId, publicAccess);
+        return saveCommitted(metadata, businessId, staged.getSize());
+    }
+
+    /**
+     * Abandon a staged image: its reservation is given back and the staged file deleted
+     */
+    public void cancelStagedImage(FileStorageService.StagedUpload staged, String businessId) {
+        storageQuotaService.cancel(businessId, staged.getSize());
+        fileStorageService.discard(staged);
+    }
+
+    /**
+     * Delete a staged upload once committed or abandoned
+     */
+    public void discardUpload(FileStorageService.StagedUpload staged) {
+        fileStorageService.discard(staged);
+    }
+
+    /**
+     * Get file metadata by ID, cached per business. Deleted files are not found, other nodes may
+     * still serve them from their cache until it expires, well within the reclaimer grace period.
+     *
+     * @throws NoSuchElementException if there is no active file with this name
+     */
+    @Cacheable(value = METADATA_CACHE, key = "#businessId + ':' + #fileName")
     public FileMetadata getFileMetadata(String fileName, String businessId) {
-        FileMetadata metadata = fileMetadataRepository.findByStoredFilename(fileName)
-            .orElseThrow(() -> new RuntimeException("File not found"));
+        FileMetadata metadata = fileMetadataRepository.findByStoredFilenameAndStatus(fileName, FileMetadata.FileStatus.ACTIVE)
+            .orElseThrow(() -> new NoSuchElementException("File not found"));
             
         // Validate business access
         if (!metadata.getBusinessId().equals(businessId)) {
@@ -155,25 +206,42 @@ public class FileService {
     }
 
     /**
-     * Get public file metadata by ID
+     * Get public file metadata by ID, cached, deleted files are not found (see getFileMetadata)
+     *
+     * @throws NoSuchElementException if there is no active file with this name
      */
+    @Cacheable(value = METADATA_CACHE, key = "'public:' + #fileName")
     public FileMetadata getFileMetadataPublic(String fileName) {
 
-        FileMetadata metadata = fileMetadataRepository.findByStoredFilename(fileName)
-            .orElseThrow(() -> new RuntimeException("File not found"));
-        
+        FileMetadata metadata = fileMetadataRepository.findByStoredFilenameAndStatus(fileName, FileMetadata.FileStatus.ACTIVE)
+            .orElseThrow(() -> new NoSuchElementException("File not found"));
+
+        if (!metadata.isPublicAccess()) {
+            throw new AccessDeniedException("Access denied to file");
+        }
+
         return metadata;
     }
 
     /**
-     * Get all files for a business
+     * Get one page of the active files of a business, newest first
+     *
+     * @param fileType Only files of this type, null for all
+     * @param mimePrefix Only files whose MIME type starts with it (e.g. "image/"), null for all
+     * @param cursor Cursor of the last file of the previous page, null for the first page
+     * @param fields Fields to return (see LISTABLE_FIELDS), null for all
+     * @throws IllegalArgumentException if the cursor is malformed or a field can't be listed
      */
-    public List<FileMetadata> getBusinessFiles(String businessId) {
-        return fileMetadataRepository.findByBusinessIdAndStatus(businessId, FileMetadata.FileStatus.ACTIVE);
+    public List<FileMetadata> getBusinessFiles(String businessId, FileMetadata.FileType fileType, String mimePrefix,
+                                               PageCursor cursor, Set<String> fields, int size) {
+        if (fields != null && !LISTABLE_FIELDS.containsAll(fields)) {
+            throw new IllegalArgumentException("Unknown field");
+        }
+        return fileMetadataRepository.findBusinessFilesAfter(businessId, fileType, mimePrefix, cursor, fields, size);
     }
 
     /**
-     * Delete a file (soft delete)
+     * Delete a file (soft delete), the stored blob is deleted with its last reference
      */
     public void deleteFile(String fileId, String businessId) {
         FileMetadata metadata = fileMetadataRepository.findById(fileId)
@@ -184,8 +252,39 @@ public class FileService {
             throw new AccessDeniedException("Access denied to delete file");
         }
         
-        // Soft delete - update status
-        metadata.setStatus(FileMetadata.FileStatus.DELETED);
-        fileMetadataRepository.save(metadata);
+        // Soft delete - update status, the blob reference and the quota are released only once
+        if (fileMetadataRepository.markDeleted(metadata.getId())) {
+            fileStorageService.releaseFile(metadata);
+            storageQuotaService.fileDeleted(metadata);
+        }
+        evictMetadata(metadata);
+    }
+
+    /**
+     * Delete a file that was replaced or whose owner was deleted (logo, profile picture, post image).
+     * No-op for unknown names, e.g. external URLs.
+     */
+    public void deleteReplacedFile(String storedFilename) {
+        if (storedFilename == null) {
+            return;
+        }
+        fileMetadataRepository.findByStoredFilename(storedFilename).ifPresent(metadata -> {
+            if (fileMetadataRepository.markDeleted(metadata.getId())) {
+                fileStorageService.releaseFile(metadata);
+                storageQuotaService.fileDeleted(metadata);
+            }
+            evictMetadata(metadata);
+        });
+    }
+
+    /**
+     * Evict the cached metadata of a file, under all its keys
+     */
+    private void evictMetadata(FileMetadata metadata) {
+        Cache cache = cacheManager.getCache(METADATA_CACHE);
+        if (cache != null) {
+            cache.evict(metadata.getBusinessId() + ":" + metadata.getStoredFilename());
+            cache.evict("public:" + metadata.getStoredFilename());
+        }
     }
 }
\ No newline at end of file
@@ -4,10 +4,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.tika.Tika;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.roytemplates.springboot3_api.config.FileCompressionProperties;
+import com.roytemplates.springboot3_api.model.FileBlob;
 import com.roytemplates.springboot3_api.model.FileMetadata;
+import com.roytemplates.springboot3_api.repository.FileBlobRepository;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -15,143 +21,382 @@ import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.time.LocalDateTime;
 import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Service for handling physical file storage operations
+ *
+ * Uploads are staged in UPLOAD_PATH, then stored in the configured BlobStore (local directory or S3 bucket).
+ *
+ * Stored files are content addressed: uploads with the same SHA-256 share one file on disk (FileBlob),
+ * reference counted across FileMetadata records. Unreferenced files are deleted by FileReclaimer.
+ *
+ * Compressible generic files (files.compression.mime-types) are stored gzipped when that saves at least
+ * files.compression.min-savings-percent, the blob records the Content-Encoding of the stored bytes.
+ *
+ * JPEG and PNG images also get a WebP rendition ("<storage key>.webp") when it is smaller than the
+ * compressed image, served to the clients accepting image/webp.
  */
 @Slf4j
 @Service
 public class FileStorageService {
 
+    // Prefix of in-progress uploads in the storage directory
+    private static final String TEMP_PREFIX = ".upload-";
+    // Enough for Tika to sniff the magic bytes of any supported type
+    private static final int SNIFF_BUFFER_SIZE = 64 * 1024;
+
     private final Path fileStorageLocation;
     private final Tika tika;
+    private final BlobStore blobStore;
+    private final FileBlobRepository fileBlobRepository;
+    private final ImageDecoder imageDecoder;
+    private final ImageProcessingExecutor imageProcessingExecutor;
+    private final FileCompressionProperties compressionProperties;
     private static final Set<String> ALLOWED_IMAGE_TYPES = Set.of(
         "image/jpeg",
         "image/png",
         "image/webp"
     );
 
-    public FileStorageService(@Value("${UPLOAD_PATH}") String uploadPath) {
+    public FileStorageService(@Value("${UPLOAD_PATH}") String uploadPath,
+                              BlobStore blobStore,
+                              FileBlobRepository fileBlobRepository,
+                              ImageDecoder imageDecoder,
+                              ImageProcessingExecutor imageProcessingExecutor,
+                              FileCompressionProperties compressionProperties) {
         this.fileStorageLocation = Paths.get(uploadPath).toAbsolutePath().normalize();
         this.tika = new Tika();
+        this.blobStore = blobStore;
+        this.fileBlobRepository = fileBlobRepository;
+        this.imageDecoder = imageDecoder;
+        this.imageProcessingExecutor = imageProcessingExecutor;
+        this.compressionProperties = compressionProperties;
         
         try {
             Files.createDirectories(this.fileStorageLocation);
+            deleteAbandonedTempFiles();
         } catch (IOException ex) {
             throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
         }
     }
 
     /**
-     * Store a file and return its metadata
+     * Delete temp files left by uploads interrupted by a restart.
+     * Only old ones, the storage directory may be shared with other instances.
+     */
+    private void deleteAbandonedTempFiles() throws IOException {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        try (Stream<Path> files = Files.list(this.fileStorageLocation)) {
+            files.filter(path -> path.getFileName().toString().startsWith(TEMP_PREFIX))
+                .filter(path -> path.toFile().lastModified() < cutoff)
+                .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * An upload streamed to a temp file in the storage directory, hashed and typed but not stored yet.
+     * Committed with {@link #commitFile}, always {@link #discard discarded} afterwards.
+     */
+    @lombok.Value
+    public static class StagedUpload {
+        Path tempFile;
+        String originalFilename;
+        String extension;
+        String mimeType;
+        String fileHash;
+        long size;
+    }
+
+    /**
+     * Stream an upload to a temp file, sniffing its MIME type and hashing it on the way.
+     * The multipart data is read once, the staged file outlives the request.
+     *
+     * Single pass upload: the MIME type is sniffed from the first bytes, the content is hashed
+     * while it streams to the temp file, images are compressed from that temp file by commitFile.
+     * Heap use does not grow with the file size. If the content is already stored, compression and
+     * the final write are skipped and the new metadata references the existing blob.
      */
-    public FileMetadata storeFile(MultipartFile file, String businessId, String userId) throws IOException {
+    public StagedUpload stageFile(MultipartFile file) throws IOException {
         String originalFilename = file.getOriginalFilename();
-        String extension = FilenameUtils.getExtension(originalFilename);
-        String storedFilename = generateUniqueFilename(extension);
-        String mimeType = detectMimeType(file);
-        String fileHash = calculateFileHash(file);
-        
-        // Create file metadata
-        FileMetadata metadata = FileMetadata.builder()
-            .originalFilename(originalFilename)
+        Path tempFile = newTempFile();
+        try {
+            MessageDigest digest = newDigest();
+            String mimeType;
+            long fileSize;
+            try (InputStream in = new BufferedInputStream(file.getInputStream(), SNIFF_BUFFER_SIZE)) {
+                // Tika marks and resets the buffered stream, the sniffed bytes are read again below
+                mimeType = tika.detect(in);
+                try (DigestInputStream digestIn = new DigestInputStream(in, digest)) {
+                    fileSize = Files.copy(digestIn, tempFile);
+                }
+            }
+            String fileHash = HexFormat.of().formatHex(digest.digest());
+            return new StagedUpload(tempFile, originalFilename, FilenameUtils.getExtension(originalFilename),
+                mimeType, fileHash, fileSize);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Stage a file assembled on the storage file system (e.g. resumable upload) and hashed by the caller,
+     * only its MIME type is sniffed. The file is owned by the staged upload afterwards.
+     */
+    public StagedUpload stageAssembled(Path file, String originalFilename, String fileHash, long size) throws IOException {
+        String mimeType;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), SNIFF_BUFFER_SIZE)) {
+            mimeType = tika.detect(in);
+        }
+        return new StagedUpload(file, originalFilename, FilenameUtils.getExtension(originalFilename),
+            mimeType, fileHash, size);
+    }
+
+    /**
+     * Store a staged upload (deduplicated, images compressed) and return its metadata.
+     * The staged file is left in place when this fails, so the commit can be retried.
+     */
+    public FileMetadata commitFile(StagedUpload staged, String businessId, String userId, boolean publicAccess) throws IOException {
+        String storedFilename = generateUniqueFilename(staged.getExtension());
+        String mimeType = staged.getMimeType();
+
+        // Duplicate content, reference the stored blob
+        Optional<FileBlob> existing = fileBlobRepository.acquire(staged.getFileHash());
+        FileBlob blob = existing.isPresent()
+            ? existing.get()
+            : storeBlob(staged.getTempFile(), staged.getFileHash(), storedFilename, staged.getExtension(), mimeType);
+
+        return FileMetadata.builder()
+            .originalFilename(staged.getOriginalFilename())
             .storedFilename(storedFilename)
-            .fileHash(fileHash)
+            .fileHash(staged.getFileHash())
+            .storageKey(blob.getStorageKey())
             .mimeType(mimeType)
-            .fileSize(file.getSize())
+            // gzipped files are served decompressed, at the size of the upload (same hash, same content)
+            .fileSize(blob.getContentEncoding() != null || blob.getSize() == null ? staged.getSize() : blob.getSize())
+            .storedSize(blob.getContentEncoding() != null ? blob.getSize() : null)
+            .contentEncoding(blob.getContentEncoding())
+            .webpStorageKey(blob.getWebpStorageKey())
+            .webpSize(blob.getWebpSize())
             .uploadedBy(userId)
             .businessId(businessId)
             .uploadDate(java.time.LocalDateTime.now())
             .fileType(isImageFile(mimeType) ? FileMetadata.FileType.IMAGE : FileMetadata.FileType.GENERIC)
             .status(FileMetadata.FileStatus.ACTIVE)
+            .publicAccess(publicAccess)
             .build();
+    }
 
-        // Compress image if applicable
-        byte[] fileBytes;
-        if (isImageFile(mimeType)) {
-            fileBytes = compressImage(file.getBytes(), extension);
-            metadata.setFileSize((long) fileBytes.length);
-        } else {
-            fileBytes = file.getBytes();
+    /**
+     * Delete the temp file of a staged upload, once committed or abandoned
+     */
+    public void discard(StagedUpload staged) {
+        try {
+            Files.deleteIfExists(staged.getTempFile());
+        } catch (IOException e) {
+            log.warn("Could not delete staged upload {}", staged.getTempFile(), e);
         }
+    }
 
-        // Store the file
-        Path targetLocation = this.fileStorageLocation.resolve(storedFilename);
-        Files.write(targetLocation, fileBytes);
-        
-        return metadata;
+    /**
+     * Whether the staged upload is a supported image
+     */
+    public boolean isImage(StagedUpload staged) {
+        return isImageFile(staged.getMimeType());
     }
 
     /**
-     * Store a public file and return its metadata
+     * Compresses (images, compressible files) and stores the staged upload, then registers it as
+     * the blob of its content. The staged file is never changed or moved, so a failed commit can be
+     * retried from it. If the registration fails the stored bytes are deleted again.
      */
-    public FileMetadata storeFilePublic(MultipartFile file, String businessId, String userId) throws IOException {
-        String originalFilename = file.getOriginalFilename();
-        String extension = FilenameUtils.getExtension(originalFilename);
-        String storedFilename = generateUniqueFilename(extension);
-        String mimeType = detectMimeType(file);
-        String fileHash = calculateFileHash(file);
-        
-        // Create file metadata
-        FileMetadata metadata = FileMetadata.builder()
-            .originalFilename(originalFilename)
-            .storedFilename(storedFilename)
-            .fileHash(fileHash)
-            .mimeType(mimeType)
-            .fileSize(file.getSize())
-            .uploadedBy(userId)
-            .businessId(businessId)
-            .uploadDate(java.time.LocalDateTime.now())
-            .fileType(isImageFile(mimeType) ? FileMetadata.FileType.IMAGE : FileMetadata.FileType.GENERIC)
-            .status(FileMetadata.FileStatus.ACTIVE)
-            .publicAccess(true)
-            .build();
+    private FileBlob storeBlob(Path stagedFile, String fileHash, String storageKey, String extension, String mimeType) throws IOException {
+        // Compress image if applicable, on the image pool (ServerBusyException when saturated)
+        CompressedImage compressed = isImageFile(mimeType)
+            ? imageProcessingExecutor.execute(() -> compressImage(stagedFile, extension))
+            : null;
+        Path image = compressed != null ? compressed.getImage() : null;
+        Path webp = compressed != null ? compressed.getWebp() : null;
+        long storedSize;
+        Path gzipped = null;
+        Path link = null;
+        String webpKey = null;
+        Long webpSize = null;
+        try {
+            long size = Files.size(stagedFile);
+
+            // Gzip compressible files, kept only if it saves enough
+            gzipped = isCompressible(mimeType, size) ? gzip(stagedFile, size) : null;
+            Path source = image != null ? image : gzipped;
+            if (source == null) {
+                // stored as uploaded, the blob store may move its source
+                link = linkTempFile(stagedFile);
+                source = link;
+            }
+            storedSize = Files.size(source);
 
-        // Compress image if applicable
-        byte[] fileBytes;
-        if (isImageFile(mimeType)) {
-            fileBytes = compressImage(file.getBytes(), extension);
-            metadata.setFileSize((long) fileBytes.length);
-        } else {
-            fileBytes = file.getBytes();
+            // Store the file
+            blobStore.put(storageKey, source, mimeType);
+
+            if (webp != null) {
+                webpSize = Files.size(webp);
+                webpKey = storeRendition(storageKey + ".webp", webp);
+            }
+        } finally {
+            for (Path temp : new Path[] { image, gzipped, link, webp }) {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            }
         }
 
-        // Store the file
-        Path targetLocation = this.fileStorageLocation.resolve(storedFilename);
-        Files.write(targetLocation, fileBytes);
-        
-        return metadata;
+        FileBlob blob;
+        try {
+            blob = fileBlobRepository.register(FileBlob.builder()
+                .id(fileHash)
+                .storageKey(storageKey)
+                .size(storedSize)
+                .mimeType(mimeType)
+                .contentEncoding(gzipped != null ? "gzip" : null)
+                .webpStorageKey(webpKey)
+                .webpSize(webpKey != null ? webpSize : null)
+                .createdAt(LocalDateTime.now())
+                .build());
+        } catch (RuntimeException e) {
+            // no blob references the stored bytes, the reclaimer would never find them
+            deleteQuietly(storageKey);
+            deleteQuietly(webpKey);
+            throw e;
+        }
+        if (!storageKey.equals(blob.getStorageKey())) {
+            // the same content was stored concurrently, keep that one
+            blobStore.delete(storageKey);
+            if (webpKey != null) {
+                blobStore.delete(webpKey);
+            }
+        }
+        return blob;
     }
 
+    private void deleteQuietly(String storageKey) {
+        if (storageKey == null) {
+            return;
+        }
+        try {
+            blobStore.delete(storageKey);
+        } catch (IOException e) {
+            log.error("Could not delete unregistered file {}, left on the storage", storageKey, e);
+        }
+    }
 
     /**
-     * Load a file as a resource
+     * New temp file with the content of the given file: a hard link when the file system supports it, else a copy
      */
-    public Path loadFileAsResource(String storedFilename) {
+    private Path linkTempFile(Path file) throws IOException {
+        Path link = newTempFile();
         try {
-            Path filePath = this.fileStorageLocation.resolve(storedFilename).normalize();
-            if (Files.exists(filePath)) {
-                return filePath;
-            } else {
-                throw new RuntimeException("File not found: " + storedFilename);
+            Files.createLink(link, file);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(file, link);
+        }
+        return link;
+    }
+
+    /**
+     * Store an image rendition, it is an optimization so the image is stored without it if this fails
+     *
+     * @return The key of the rendition, null if it could not be stored
+     */
+    private String storeRendition(String key, Path file) {
+        try {
+            blobStore.put(key, file, "image/webp");
+            return key;
+        } catch (IOException e) {
+            log.warn("Could not store the image rendition {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether a file of this type and size is worth trying to gzip
+     */
+    private boolean isCompressible(String mimeType, long size) {
+        if (!compressionProperties.isEnabled() || mimeType == null || isImageFile(mimeType)
+                || size < compressionProperties.getMinSize() || size > compressionProperties.getMaxSize()) {
+            return false;
+        }
+        String type = mimeType.toLowerCase();
+        return compressionProperties.getMimeTypes().stream()
+            .anyMatch(prefix -> prefix.endsWith("/") ? type.startsWith(prefix) : type.equals(prefix));
+    }
+
+    /**
+     * Gzip a file to a new temp file, null (and no temp file) if that does not save
+     * files.compression.min-savings-percent of its size
+     */
+    private Path gzip(Path source, long size) throws IOException {
+        Path target = newTempFile();
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), SNIFF_BUFFER_SIZE)) {
+                Files.copy(source, out);
+            }
+            if (Files.size(target) * 100 <= size * (100 - compressionProperties.getMinSavingsPercent())) {
+                return target;
             }
-        } catch (Exception ex) {
-            throw new RuntimeException("File not found: " + storedFilename, ex);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
         }
+        Files.deleteIfExists(target);
+        return null;
+    }
+
+    /**
+     * Release the blob reference of a deleted file, FileReclaimer deletes the stored file once the last
+     * reference is gone for the grace period. Files uploaded before deduplication have no blob,
+     * the reclaimer finds them by their DELETED status.
+     */
+    public void releaseFile(FileMetadata metadata) {
+        if (metadata.getStorageKey() == null) {
+            return;
+        }
+        fileBlobRepository.release(metadata.getFileHash());
+    }
+
+    /**
+     * Load a file as a resource, streamed from the blob store when it is not on the local disk.
+     * Files stored gzipped are decompressed while they are read.
+     */
+    public Resource loadFileAsResource(FileMetadata metadata) throws IOException {
+        String storageKey = metadata.resolveStorageKey();
+        if (metadata.getContentEncoding() != null) {
+            return new InputStreamResource(new GZIPInputStream(blobStore.open(storageKey), SNIFF_BUFFER_SIZE));
+        }
+        BlobStore.BlobInfo blob = blobStore.stat(storageKey);
+        if (blob.getLocalPath() != null) {
+            return new UrlResource(blob.getLocalPath().toUri());
+        }
+        return new InputStreamResource(blobStore.open(storageKey));
     }
 
     /**
@@ -159,92 +404,142 @@ public class FileStorageService {
      */
     public void deleteFile(String storedFilename) {
         try {
-            Path filePath = this.fileStorageLocation.resolve(storedFilename).normalize();
-            Files.deleteIfExists(filePath);
+            blobStore.delete(storedFilename);
         } catch (IOException ex) {
             throw new RuntimeException("Could not delete file: " + storedFilename, ex);
         }
     }
 
     /**
-     * Validate if file is an image
+     * Generate a unique filename
      */
-    public boolean validateImageFile(MultipartFile file) throws IOException {
-        String mimeType = detectMimeType(file);
-        return isImageFile(mimeType);
+    private String generateUniqueFilename(String extension) {
+        return UUID.randomUUID().toString() + (extension != null ? "." + extension : "");
     }
 
     /**
-     * Generate a unique filename
+     * Whether a file of the storage directory is a temp file of an upload in progress
      */
-    private String generateUniqueFilename(String extension) {
-        return UUID.randomUUID().toString() + (extension != null ? "." + extension : "");
+    public boolean isTempFile(Path path) {
+        return path.getFileName().toString().startsWith(TEMP_PREFIX);
+    }
+
+    /**
+     * Path of a new temp file in the storage directory, on the file system of the local blob store
+     * so the final move stays atomic.
+     * Created by the writer with the same permissions as the stored files.
+     */
+    private Path newTempFile() {
+        return this.fileStorageLocation.resolve(TEMP_PREFIX + UUID.randomUUID() + ".tmp");
     }
 
     /**
-     * Calculate SHA-256 hash of file content
+     * New SHA-256 digest for file content hashes
      */
-    private String calculateFileHash(MultipartFile file) throws IOException {
+    private MessageDigest newDigest() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            
-            try (InputStream is = file.getInputStream()) {
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    digest.update(buffer, 0, bytesRead);
-                }
-            }
-            
-            byte[] hashBytes = digest.digest();
-            return HexFormat.of().formatHex(hashBytes);
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException ex) {
             throw new RuntimeException("Could not generate file hash", ex);
         }
     }
 
     /**
-     * Detect MIME type of file
+     * Check if file is an image based on MIME type
      */
-    private String detectMimeType(MultipartFile file) throws IOException {
-        return tika.detect(file.getInputStream());
+    private boolean isImageFile(String mimeType) {
+        return ALLOWED_IMAGE_TYPES.contains(mimeType.toLowerCase());
     }
 
     /**
-     * Check if file is an image based on MIME type
+     * A compressed image and its optional WebP rendition, both temp files
      */
-    private boolean isImageFile(String mimeType) {
-        return ALLOWED_IMAGE_TYPES.contains(mimeType.toLowerCase());
+    @lombok.Value
+    private static class CompressedImage {
+        Path image;
+        Path webp;
     }
 
     /**
-     * Compress image with specified quality
+     * Compress image with specified quality to a temp file, the source file is left unchanged.
+     * Decoding is bounded by ImageDecoder, oversized images are rejected or downsampled.
+     *
+     * @return The compressed image, with the WebP rendition of a JPEG/PNG image if it is smaller than
+     *         the compressed image, or null to store the original (no WebP writer available)
      */
-    private byte[] compressImage(byte[] imageData, String extension) throws IOException {
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageData));
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private CompressedImage compressImage(Path imageFile, String extension) throws IOException {
+        BufferedImage originalImage = imageDecoder.decode(imageFile);
+        Path compressedFile = newTempFile();
+        try {
+            // Handle WebP separately as it might use a different API
+            if ("webp".equalsIgnoreCase(extension)) {
+                if (!ImageIO.write(originalImage, "webp", compressedFile.toFile())) {
+                    // no WebP writer available, keep the original
+                    Files.deleteIfExists(compressedFile);
+                    return null;
+                }
+                return new CompressedImage(compressedFile, null);
+            }
 
-        // Handle WebP separately as it might use a different API
-        if ("webp".equalsIgnoreCase(extension)) {
-            ImageIO.write(originalImage, "webp", outputStream);
-            return outputStream.toByteArray();
-        }
+            // For JPEG and PNG
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(extension).next();
+            try (ImageOutputStream ios = ImageIO.createImageOutputStream(compressedFile.toFile())) {
+                ImageWriteParam writeParam = writer.getDefaultWriteParam();
 
-        // For JPEG and PNG
-        ImageWriter writer = ImageIO.getImageWritersByFormatName(extension).next();
-        ImageWriteParam writeParam = writer.getDefaultWriteParam();
+                if (writeParam.canWriteCompressed()) {
+                    writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    writeParam.setCompressionQuality(0.8f); // 80% quality
+                }
 
-        if (writeParam.canWriteCompressed()) {
-            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            writeParam.setCompressionQuality(0.8f); // 80% quality
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(originalImage, null, null), writeParam);
+            } finally {
+                writer.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(compressedFile);
+            throw e;
+        }
+        try {
+            return new CompressedImage(compressedFile, encodeWebp(originalImage, Files.size(compressedFile)));
+        } catch (IOException | RuntimeException e) {
+            // the rendition is optional, the image is stored without it
+            log.warn("Could not encode the WebP rendition of {}", imageFile, e);
+            return new CompressedImage(compressedFile, null);
         }
+    }
 
-        try (ImageOutputStream ios = ImageIO.createImageOutputStream(outputStream)) {
-            writer.setOutput(ios);
-            writer.write(null, new IIOImage(originalImage, null, null), writeParam);
+    /**
+     * Encode a lossy WebP rendition (80% quality) to a temp file, null if it is not smaller than maxSize
+     * or no WebP writer is available
+     */
+    private Path encodeWebp(BufferedImage image, long maxSize) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("webp");
+        if (!writers.hasNext()) {
+            return null;
+        }
+        ImageWriter writer = writers.next();
+        Path webpFile = newTempFile();
+        try {
+            try (ImageOutputStream ios = ImageIO.createImageOutputStream(webpFile.toFile())) {
+                ImageWriteParam writeParam = writer.getDefaultWriteParam();
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // the first compression type is the lossy one
+                writeParam.setCompressionType(writeParam.getCompressionTypes()[0]);
+                writeParam.setCompressionQuality(0.8f);
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(image, null, null), writeParam);
+            }
+            if (Files.size(webpFile) < maxSize) {
+                return webpFile;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(webpFile);
+            throw e;
+        } finally {
             writer.dispose();
         }
-
-        return outputStream.toByteArray();
+        Files.deleteIfExists(webpFile);
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.ImageDecodingProperties;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Memory bounded image decoding.
+ *
+ * The dimensions are read from the image header first: images above files.images.max-source-pixels
+ * are rejected, and larger images are decoded with source subsampling (every n-th pixel) so the
+ * decoded image is never bigger than needed for the target size nor above files.images.max-decode-pixels.
+ */
+@Service
+@RequiredArgsConstructor
+public class ImageDecoder {
+
+    private final ImageDecodingProperties properties;
+
+    /**
+     * Decode an image within the pixel budget
+     *
+     * @throws IllegalArgumentException if the image has too many pixels
+     * @throws IOException if the file is not a readable image
+     */
+    public BufferedImage decode(Path file) throws IOException {
+        return decode(file, 0, 0);
+    }
+
+    /**
+     * Decode an image for a target box, subsampling as long as the result still covers it
+     *
+     * @param targetWidth Width the image will be scaled to, 0 if unknown
+     * @param targetHeight Height the image will be scaled to, 0 if unknown
+     * @throws IllegalArgumentException if the image has too many pixels
+     * @throws IOException if the file is not a readable image
+     */
+    public BufferedImage decode(Path file, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image: " + file.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // header only, no pixels decoded yet
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > properties.getMaxSourcePixels()) {
+                    throw new IllegalArgumentException("Image dimensions too large: " + width + "x" + height);
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = subsampling(width, height, targetWidth, targetHeight);
+                if (factor > 1) {
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Largest factor keeping the target covered, raised until the decode budget is met
+    private int subsampling(int width, int height, int targetWidth, int targetHeight) {
+        int factor = 1;
+        if (targetWidth > 0 || targetHeight > 0) {
+            int byWidth = targetWidth > 0 ? width / targetWidth : Integer.MAX_VALUE;
+            int byHeight = targetHeight > 0 ? height / targetHeight : Integer.MAX_VALUE;
+            factor = Math.max(1, Math.min(byWidth, byHeight));
+        }
+        while (decodedPixels(width, factor) * decodedPixels(height, factor) > properties.getMaxDecodePixels()) {
+            factor++;
+        }
+        return factor;
+    }
+
+    private static long decodedPixels(int size, int factor) {
+        return (size + factor - 1) / factor;
+    }
+}
@@ -0,0 +1,133 @@
+package com.roytemplates.springboot3_api.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.ImageExecutorProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool for CPU heavy image work (compression, variant rendering).
+ *
+ * Sized to the CPU count with a bounded queue: when the queue is full the task is rejected
+ * right away with a ServerBusyException (503 + Retry-After) instead of piling up request threads.
+ * Pool and queue metrics are exported as "imageProcessing" executor metrics, task durations as
+ * the image.processing timer and rejections as the image.processing.rejected counter.
+ */
+@Slf4j
+@Service
+public class ImageProcessingExecutor {
+
+    // Image work that may fail with an IOException
+    @FunctionalInterface
+    public interface ImageTask<T> {
+        T call() throws IOException;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Timer timer;
+    private final Counter rejected;
+    private final int retryAfterSeconds;
+
+    public ImageProcessingExecutor(ImageExecutorProperties properties, MeterRegistry meterRegistry) {
+        int threads = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                threadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.retryAfterSeconds = properties.getRetryAfterSeconds();
+
+        new ExecutorServiceMetrics(executor, "imageProcessing", Collections.emptyList()).bindTo(meterRegistry);
+        this.timer = Timer.builder("image.processing")
+                .description("Time spent processing an image")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("image.processing.rejected")
+                .description("Image tasks rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the task on the pool and waits for its result.
+     *
+     * @throws ServerBusyException if the queue is full
+     */
+    public <T> T execute(ImageTask<T> task) throws IOException {
+        Future<T> future = submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IOException("Interrupted while processing image", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException("Image processing failed", cause);
+        }
+    }
+
+    /**
+     * Runs the task on the pool, the future fails with the task exception.
+     *
+     * @throws ServerBusyException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(ImageTask<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServerBusyException("Image processing queue is full", retryAfterSeconds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static ThreadFactory threadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "image-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,263 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.roytemplates.springboot3_api.config.ImageVariantProperties;
+import com.roytemplates.springboot3_api.dto.ImageVariant;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders resized variants of stored images on demand and keeps them in a bounded
+ * on-disk LRU cache in the ".variants" directory of the storage root.
+ *
+ * Variants are keyed by the content hash of the source and the variant parameters.
+ * Concurrent requests for the same variant share a single render, run on the ImageProcessingExecutor.
+ * Once the total size exceeds files.variants.max-cache-bytes the least recently used variants are evicted,
+ * their files are deleted files.variants.evicted-delete-delay-seconds later so the downloads still sending
+ * them (possibly with sendfile, which opens the path later) are not cut short.
+ * Cache statistics are exported as the "imageVariants" cache metrics.
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+
+    // Supported source types and the ImageIO format used to write their variants
+    private static final Map<String, String> FORMATS = Map.of(
+        "image/jpeg", "jpeg",
+        "image/png", "png",
+        "image/webp", "webp"
+    );
+
+    private static final String TEMP_PREFIX = ".render-";
+
+    private final BlobStore blobStore;
+    private final ImageDecoder imageDecoder;
+    private final ImageProcessingExecutor imageProcessingExecutor;
+    private final Path variantsLocation;
+
+    // variant file name -> variant file, weighed by size in bytes
+    private final AsyncCache<String, Path> cache;
+
+    public ImageVariantService(@Value("${UPLOAD_PATH}") String uploadPath,
+                               BlobStore blobStore,
+                               ImageDecoder imageDecoder,
+                               ImageProcessingExecutor imageProcessingExecutor,
+                               ImageVariantProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.blobStore = blobStore;
+        this.imageDecoder = imageDecoder;
+        this.imageProcessingExecutor = imageProcessingExecutor;
+        this.variantsLocation = Paths.get(uploadPath).toAbsolutePath().normalize().resolve(".variants");
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxCacheBytes())
+                .weigher((String name, Path path) -> (int) Math.min(Integer.MAX_VALUE, path.toFile().length()))
+                .removalListener((String name, Path path, RemovalCause cause) -> {
+                    if (path != null && cause != RemovalCause.REPLACED) {
+                        CompletableFuture.runAsync(() -> deleteEvicted(name, path),
+                            CompletableFuture.delayedExecutor(properties.getEvictedDeleteDelaySeconds(), TimeUnit.SECONDS));
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "imageVariants");
+
+        try {
+            Files.createDirectories(this.variantsLocation);
+            loadExistingVariants();
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where the image variants will be stored.", ex);
+        }
+    }
+
+    /**
+     * Whether variants can be rendered for this file
+     */
+    public boolean supports(FileMetadata metadata) {
+        return metadata.getMimeType() != null && FORMATS.containsKey(metadata.getMimeType());
+    }
+
+    /**
+     * Returns the variant file, rendering it on the first request.
+     *
+     * @throws IOException if the source can't be read or the variant written
+     * @throws IllegalArgumentException if the source image is too large to decode
+     * @throws ServerBusyException if the image pool is saturated
+     */
+    public Path getVariant(FileMetadata metadata, ImageVariant variant) throws IOException {
+        String name = variantName(metadata, variant);
+        try {
+            return cache.get(name, (key, cacheExecutor) ->
+                imageProcessingExecutor.submit(() -> render(metadata, variant, key))).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // <content hash>_<variant key>.<format>
+    private String variantName(FileMetadata metadata, ImageVariant variant) {
+        String source = metadata.getFileHash() != null ? metadata.getFileHash() : metadata.resolveStorageKey();
+        return source + "_" + variant.key() + "." + FORMATS.get(metadata.getMimeType());
+    }
+
+    /**
+     * Render a variant to a temp file and move it into the cache directory
+     */
+    private Path render(FileMetadata metadata, ImageVariant variant, String name) throws IOException {
+        Path target = variantsLocation.resolve(name);
+        Path tempFile = variantsLocation.resolve(TEMP_PREFIX + UUID.randomUUID() + ".tmp");
+        Path download = null;
+        try {
+            BlobStore.BlobInfo blob = blobStore.stat(metadata.resolveStorageKey());
+            Path source = blob.getLocalPath();
+            if (source == null) {
+                // remote blob store, the decoder needs a file
+                download = variantsLocation.resolve(TEMP_PREFIX + UUID.randomUUID() + ".src");
+                try (InputStream in = blobStore.open(blob.getKey())) {
+                    Files.copy(in, download);
+                }
+                source = download;
+            }
+            // subsampled while decoding, down to about the variant size
+            BufferedImage image = imageDecoder.decode(source,
+                variant.getWidth() != null ? variant.getWidth() : 0,
+                variant.getHeight() != null ? variant.getHeight() : 0);
+            String format = FORMATS.get(metadata.getMimeType());
+            write(resize(image, variant, "jpeg".equals(format)), format, variant.getQuality(), tempFile);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        } finally {
+            deleteQuietly(tempFile);
+            if (download != null) {
+                deleteQuietly(download);
+            }
+        }
+    }
+
+    /**
+     * Scale (and for COVER crop) the image to the variant box, never upscaling
+     */
+    private BufferedImage resize(BufferedImage source, ImageVariant variant, boolean opaque) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        double scaleX = variant.getWidth() != null ? (double) variant.getWidth() / sourceWidth : Double.MAX_VALUE;
+        double scaleY = variant.getHeight() != null ? (double) variant.getHeight() / sourceHeight : Double.MAX_VALUE;
+
+        boolean cover = variant.getFit() == ImageVariant.Fit.COVER && variant.getWidth() != null && variant.getHeight() != null;
+        double scale = Math.min(1.0, cover ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY));
+
+        int scaledWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+        int width = cover ? Math.min(scaledWidth, variant.getWidth()) : scaledWidth;
+        int height = cover ? Math.min(scaledHeight, variant.getHeight()) : scaledHeight;
+
+        BufferedImage result = new BufferedImage(width, height,
+            opaque || !source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, (width - scaledWidth) / 2, (height - scaledHeight) / 2, scaledWidth, scaledHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Encode the image, quality applies to the lossy formats
+     */
+    private void write(BufferedImage image, String format, int quality, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            if (!"png".equals(format) && writeParam.canWriteCompressed()) {
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (writeParam.getCompressionTypes() != null && writeParam.getCompressionType() == null) {
+                    // WebP: the first type is the lossy one
+                    writeParam.setCompressionType(writeParam.getCompressionTypes()[0]);
+                }
+                writeParam.setCompressionQuality(quality / 100f);
+            }
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Index the variants left by a previous run (oldest first) and delete unfinished renders
+     */
+    private void loadExistingVariants() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(variantsLocation)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        files.stream()
+            .filter(path -> path.getFileName().toString().startsWith(TEMP_PREFIX))
+            .forEach(this::deleteQuietly);
+        files.stream()
+            .filter(path -> !path.getFileName().toString().startsWith(TEMP_PREFIX))
+            .sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+            .forEach(path -> cache.put(path.getFileName().toString(), CompletableFuture.completedFuture(path)));
+    }
+
+    /**
+     * Delete the file of an evicted variant, unless the variant was requested (and rendered to the same path) since
+     */
+    private void deleteEvicted(String name, Path path) {
+        // computing the entry locks it against a concurrent render of the variant
+        cache.asMap().compute(name, (key, rendered) -> {
+            if (rendered == null) {
+                deleteQuietly(path);
+            }
+            return rendered;
+        });
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete image variant {}", path, e);
+        }
+    }
+}
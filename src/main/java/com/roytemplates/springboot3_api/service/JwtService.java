@@ -1,15 +1,20 @@
 package com.roytemplates.springboot3_api.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import com.roytemplates.springboot3_api.model.User;
+import com.roytemplates.springboot3_api.security.JwtClaims;
+import com.roytemplates.springboot3_api.security.TokenRevocationService;
 
 import java.security.Key;
 import java.util.Date;
@@ -24,15 +29,21 @@ import java.util.function.Function;
  *
  * The service supports:
  * - Token generation for users
+ * - Token verification (signature and expiration checked in a single parse)
  * - Token validation
  * - Claim extraction
  * - Username extraction
- * - Token expiration checking
+ *
+ * The signing key and the parser are built once at startup and reused for every request.
  *
  * Configuration properties required:
  * - jwt.secret: The secret key used for signing tokens
  * - jwt.expiration: The token expiration time in milliseconds
  *
+ * Optional:
+ * - jwt.stateless-claims: also embed user id, business id, profile status and token version
+ *   so requests can be authorized without loading the user (see JwtClaims)
+ *
  */
 @Service
 public class JwtService {
@@ -45,14 +56,44 @@ public class JwtService {
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
+    // Embed the stateless authorization claims in new tokens
+    @Value("${jwt.stateless-claims:false}")
+    private boolean statelessClaims;
+
+    // Signing key decoded once from the Base64 secret
+    private Key signingKey;
+
+    // Prebuilt parser, immutable and thread safe
+    private JwtParser jwtParser;
+
+    @PostConstruct
+    void init() {
+        // Decodes the secret key from Base64 and creates the Key object
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+
+    /**
+     * Parses the token once, verifying its signature and expiration.
+     *
+     * @param token The compact JWT
+     * @return The verified claims
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, tampered or expired
+     */
+    public JwtClaims verifyToken(String token) {
+        return JwtClaims.from(extractAllClaims(token));
+    }
+
     // Extracts username (subject) from JWT token
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verifyToken(token).getSubject();
     }
 
     // Extracts role from JWT token
     public String extractRole(String token) {
-        return extractClaim(token, claims -> claims.get("role", String.class));
+        return verifyToken(token).getRole();
     }
 
     // Generic method to extract any claim from token using a resolver function
@@ -68,49 +109,39 @@ public class JwtService {
 
     // Generates token with extra claims and user information
     public String generateToken(Map<String, Object> extraClaims, User user) {
+        Map<String, Object> claims = new HashMap<>(extraClaims);
+        if (statelessClaims && user.getId() != null) {
+            claims.put(JwtClaims.USER_ID, user.getId());
+            claims.put(JwtClaims.BUSINESS_ID, user.getBusinessID());
+            claims.put(JwtClaims.PROFILE_STATUS, user.getProfileStatus());
+            claims.put(JwtClaims.TOKEN_VERSION, TokenRevocationService.currentVersion(user));
+        }
         return Jwts
                 .builder()
-                .setClaims(extraClaims)
+                .setClaims(claims)
                 .setSubject(user.getEmail())
                 .claim("role", user.getRole())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + jwtExpiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    // Checks if token is expired by comparing with current date
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    // Extracts expiration date from token
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
-    // Extracts all claims from token
+    // Extracts all claims from token, the parser also rejects expired tokens
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
+        return jwtParser
                 .parseClaimsJws(token)
                 .getBody();
     }
 
-    // Retrieves the secret key as a Key object
-    private Key getSignInKey() {
-        // Decodes the secret key from Base64
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        // Creates a Key object from the decoded bytes
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
-
     // Validates if token belongs to user and is not expired
     public boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(verifyToken(token), userDetails);
     }
-    
+
+    // Validates already verified claims against the user, without parsing the token again
+    public boolean validateToken(JwtClaims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !claims.isExpired();
+    }
+
 }
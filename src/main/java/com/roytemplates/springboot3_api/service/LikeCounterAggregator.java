@@ -0,0 +1,134 @@
+package com.roytemplates.springboot3_api.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.repository.PostRepository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind aggregator for post like counters.
+ *
+ * Like/unlike deltas are absorbed in memory by a striped counter (LongAdder) per post
+ * and flushed to Post.likes in one bulk write every likes.aggregator.flush-interval-ms,
+ * so a viral post doesn't serialize every like on its Mongo document.
+ * Pending deltas are flushed on graceful shutdown, readers merge them in with pendingDelta().
+ *
+ * Staleness of Post.likes in Mongo is bounded by the flush interval (plus the flush itself),
+ * exported as the likes.aggregator.staleness gauge (ms since the last successful flush).
+ * Set likes.aggregator.enabled=false to write every delta directly.
+ */
+@Slf4j
+@Service
+public class LikeCounterAggregator {
+
+    private final PostRepository postRepository;
+    private final boolean enabled;
+
+    // postId -> delta not yet flushed
+    private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+
+    // deltas of the flush in progress, still visible to readers until written
+    private volatile Map<String, Long> flushing = Collections.emptyMap();
+
+    private volatile long lastFlushMillis = System.currentTimeMillis();
+
+    public LikeCounterAggregator(PostRepository postRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${likes.aggregator.enabled:true}") boolean enabled) {
+        this.postRepository = postRepository;
+        this.enabled = enabled;
+
+        Gauge.builder("likes.aggregator.pending", pending, Map::size)
+                .description("Posts with like deltas waiting to be flushed")
+                .register(meterRegistry);
+        Gauge.builder("likes.aggregator.staleness", this, a -> a.pending.isEmpty() ? 0 : System.currentTimeMillis() - a.lastFlushMillis)
+                .description("Milliseconds since pending like deltas were last flushed")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds a delta to the likes counter of a post.
+     */
+    public void add(String postId, long delta) {
+        if (!enabled) {
+            postRepository.incrementLikes(postId, delta);
+            return;
+        }
+
+        LongAdder adder = pending.computeIfAbsent(postId, k -> new LongAdder());
+        adder.add(delta);
+
+        // the adder was detached by a concurrent flush, move what it still holds to the current one
+        if (pending.get(postId) != adder) {
+            long remaining = adder.sumThenReset();
+            if (remaining != 0) {
+                add(postId, remaining);
+            }
+        }
+    }
+
+    /**
+     * Returns the delta of a post not yet written to Mongo, to merge into Post.likes on reads.
+     */
+    public long pendingDelta(String postId) {
+        LongAdder adder = pending.get(postId);
+        long delta = adder != null ? adder.sum() : 0;
+        return delta + flushing.getOrDefault(postId, 0L);
+    }
+
+    /**
+     * Writes the aggregated deltas to Mongo in one bulk write.
+     */
+    @Scheduled(fixedDelayString = "${likes.aggregator.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            lastFlushMillis = System.currentTimeMillis();
+            return;
+        }
+
+        Map<String, Long> deltas = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : pending.entrySet()) {
+            // detach the adder first, concurrent adds either land before the reset or get moved by add()
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                long delta = entry.getValue().sumThenReset();
+                if (delta != 0) {
+                    deltas.merge(entry.getKey(), delta, Long::sum);
+                }
+            }
+        }
+
+        flushing = deltas;
+        try {
+            // the bulk write is unordered, only the updates that failed are kept for the next flush
+            Map<String, Long> failed = postRepository.incrementLikes(deltas);
+            if (!failed.isEmpty()) {
+                log.error("Could not flush {} of {} like counters, retrying on next flush", failed.size(), deltas.size());
+                failed.forEach(this::add);
+            }
+            lastFlushMillis = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            // nothing is known to be written, keep the deltas for the next flush
+            log.error("Could not flush {} like counters, retrying on next flush", deltas.size(), e);
+            deltas.forEach(this::add);
+        } finally {
+            flushing = Collections.emptyMap();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,124 @@
+package com.roytemplates.springboot3_api.service;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Blob store on the local file system (UPLOAD_PATH), the default backend.
+ *
+ * Blobs are stored under two levels of hex prefix directories derived from the SHA-256 of their
+ * key ("ab/cd/<key>"), blobs of the legacy flat layout are still found at the root and moved
+ * by StorageShardingMigration.
+ */
+@Service
+@ConditionalOnProperty(name = "files.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+
+    public LocalBlobStore(@Value("${UPLOAD_PATH}") String uploadPath) {
+        this.root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(this.root);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source, String contentType) throws IOException {
+        Path target = shardedPath(key);
+        Files.createDirectories(target.getParent());
+        // the source is staged in the same file system, the move is a rename
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public BlobInfo stat(String key) throws IOException {
+        Path path = resolvePath(key);
+        return new BlobInfo(key, Files.size(path), Files.getLastModifiedTime(path).toMillis(), path);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolvePath(key));
+    }
+
+    @Override
+    public InputStream open(String key, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(resolvePath(key), StandardOpenOption.READ);
+        channel.position(start);
+        return new BoundedInputStream(Channels.newInputStream(channel), end - start + 1);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        // flat first: a concurrent migration either already linked the file (both names go) or fails to
+        Files.deleteIfExists(flatPath(key));
+        Files.deleteIfExists(shardedPath(key));
+    }
+
+    /**
+     * Path of a blob in the sharded layout: <root>/ab/cd/<key>, ab and cd being the first
+     * two bytes of the SHA-256 of the key, so files spread evenly over 65536 directories
+     */
+    public Path shardedPath(String key) {
+        String hash;
+        try {
+            hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Could not hash storage key", ex);
+        }
+        return this.root
+            .resolve(hash.substring(0, 2))
+            .resolve(hash.substring(2, 4))
+            .resolve(key)
+            .normalize();
+    }
+
+    /**
+     * Path of a blob in the legacy flat layout
+     */
+    public Path flatPath(String key) {
+        return this.root.resolve(key).normalize();
+    }
+
+    /**
+     * Root of the storage directory
+     */
+    public Path getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Locate a blob: sharded layout, then legacy flat layout, then sharded again
+     * in case the migration moved it between the two checks
+     */
+    private Path resolvePath(String key) {
+        Path sharded = shardedPath(key);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = flatPath(key);
+        if (Files.exists(flat)) {
+            return flat;
+        }
+        return sharded;
+    }
+}
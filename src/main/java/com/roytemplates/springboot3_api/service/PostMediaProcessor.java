@@ -0,0 +1,153 @@
+package com.roytemplates.springboot3_api.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.PostMediaProperties;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+import com.roytemplates.springboot3_api.model.MediaStatus;
+import com.roytemplates.springboot3_api.model.Post;
+import com.roytemplates.springboot3_api.repository.PostRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background pipeline finishing the image of posts created with createPost?async=true.
+ *
+ * The upload is staged (streamed to disk, typed and hashed) during the request and the post saved as PENDING.
+ * A worker then commits the staged image (compression on the ImageProcessingExecutor, storage, metadata)
+ * and marks the post READY. Failures are retried with a growing delay, after posts.media.max-attempts
+ * the post is marked FAILED. Invalid images fail right away. A retry does not commit an image that was
+ * already committed, and an image committed for a post deleted meanwhile is deleted again.
+ *
+ * Staged uploads only live on this node, posts left PENDING by a restart are marked FAILED
+ * after posts.media.stale-after-minutes.
+ */
+@Slf4j
+@Service
+public class PostMediaProcessor {
+
+    private final FileService fileService;
+    private final PostRepository postRepository;
+    private final PostMediaProperties properties;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    // Posts accepted and not yet READY or FAILED
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public PostMediaProcessor(FileService fileService,
+                              PostRepository postRepository,
+                              PostMediaProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.fileService = fileService;
+        this.postRepository = postRepository;
+        this.properties = properties;
+        AtomicInteger count = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(properties.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "post-media-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // on shutdown queued jobs are dropped, the stale check fails their posts
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        Gauge.builder("posts.media.pending", pending, AtomicInteger::get)
+                .description("Posts whose image is waiting to be processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the processing of the staged image of a PENDING post, the staged upload is owned by the pipeline.
+     *
+     * @throws ServerBusyException if too many posts are already pending
+     */
+    public void submit(Post post, FileStorageService.StagedUpload staged) {
+        if (pending.incrementAndGet() > properties.getMaxPending()) {
+            pending.decrementAndGet();
+            throw new ServerBusyException("Too many posts pending", (int) Math.max(1, properties.getRetryDelayMs() / 1000));
+        }
+        schedule(post, staged, null, 1, 0);
+    }
+
+    // committed: the image stored by a previous attempt, null until then
+    private void schedule(Post post, FileStorageService.StagedUpload staged, FileMetadata committed, int attempt, long delayMs) {
+        scheduler.schedule(() -> process(post, staged, committed, attempt), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void process(Post post, FileStorageService.StagedUpload staged, FileMetadata committed, int attempt) {
+        FileMetadata metadata = committed;
+        try {
+            // a failed commit is undone by FileService, a successful one is not repeated by the retries
+            if (metadata == null) {
+                metadata = fileService.commitImage(staged, post.getBusinessId(), post.getUserId());
+            }
+            if (!postRepository.updateMedia(post.getId(), MediaStatus.PENDING, MediaStatus.READY, metadata.getStoredFilename())) {
+                // the post was deleted (or failed as stale) meanwhile, nothing references the image
+                log.info("Post {} is no longer pending, dropping its image", post.getId());
+                fileService.deleteReplacedFile(metadata.getStoredFilename());
+            }
+            finish(staged);
+        } catch (IllegalArgumentException e) {
+            // not a valid image, retrying won't help
+            log.warn("Image of post {} rejected: {}", post.getId(), e.getMessage());
+            fail(post, staged, metadata);
+        } catch (Exception e) {
+            if (attempt < properties.getMaxAttempts()) {
+                log.warn("Processing image of post {} failed (attempt {}), retrying", post.getId(), attempt, e);
+                schedule(post, staged, metadata, attempt + 1, properties.getRetryDelayMs() * attempt);
+            } else {
+                log.error("Processing image of post {} failed after {} attempts", post.getId(), attempt, e);
+                fail(post, staged, metadata);
+            }
+        }
+    }
+
+    private void fail(Post post, FileStorageService.StagedUpload staged, FileMetadata committed) {
+        try {
+            postRepository.updateMedia(post.getId(), MediaStatus.PENDING, MediaStatus.FAILED, null);
+            if (committed != null) {
+                // its reservation was already replaced by the stored file
+                fileService.deleteReplacedFile(committed.getStoredFilename());
+            } else {
+                fileService.cancelStagedImage(staged, post.getBusinessId());
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not mark post {} as failed", post.getId(), e);
+        } finally {
+            finish(staged);
+        }
+    }
+
+    private void finish(FileStorageService.StagedUpload staged) {
+        fileService.discardUpload(staged);
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Marks posts stuck in PENDING (their staged upload was lost) as FAILED.
+     */
+    @Scheduled(fixedDelayString = "${posts.media.stale-check-ms:60000}")
+    public void failStalePending() {
+        Instant before = Instant.now().minus(Duration.ofMinutes(properties.getStaleAfterMinutes()));
+        long failed = postRepository.failPendingMediaBefore(before);
+        if (failed > 0) {
+            log.warn("Marked {} posts stuck in PENDING as FAILED", failed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // lets the running jobs finish
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
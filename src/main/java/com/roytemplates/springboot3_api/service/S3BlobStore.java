@@ -0,0 +1,189 @@
+package com.roytemplates.springboot3_api.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.BlobStoreProperties;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blob store in a bucket of an S3 compatible service (files.storage.type=s3), lets several API nodes
+ * share the files without a shared file system.
+ *
+ * - uploads stream from the staged file, files above multipart-threshold are uploaded in part-size parts,
+ *   each part re-read from the file when the SDK retries it
+ * - downloads stream the object, byte ranges are fetched with ranged GETs
+ * - SDK errors are reported as IOException, a missing object as NoSuchFileException
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "files.storage.type", havingValue = "s3")
+public class S3BlobStore implements BlobStore {
+
+    private final S3Client s3;
+    private final String bucket;
+    private final long multipartThreshold;
+    private final long partSize;
+
+    public S3BlobStore(BlobStoreProperties properties) {
+        BlobStoreProperties.S3 config = properties.getS3();
+        if (config.getBucket() == null || config.getBucket().isBlank()) {
+            throw new IllegalStateException("files.storage.s3.bucket is required with files.storage.type=s3");
+        }
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(config.getRegion()))
+                .forcePathStyle(config.isPathStyleAccess());
+        if (config.getEndpoint() != null && !config.getEndpoint().isBlank()) {
+            builder.endpointOverride(URI.create(config.getEndpoint()));
+        }
+        if (config.getAccessKey() != null && !config.getAccessKey().isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(config.getAccessKey(), config.getSecretKey())));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        this.s3 = builder.build();
+        this.bucket = config.getBucket();
+        this.multipartThreshold = config.getMultipartThreshold();
+        this.partSize = config.getPartSize();
+    }
+
+    @Override
+    public void put(String key, Path source, String contentType) throws IOException {
+        long size = Files.size(source);
+        try {
+            if (size <= multipartThreshold) {
+                s3.putObject(request -> request.bucket(bucket).key(key).contentType(contentType),
+                    RequestBody.fromFile(source));
+            } else {
+                putMultipart(key, source, size, contentType);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not upload " + key, e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void putMultipart(String key, Path source, long size, String contentType) throws IOException {
+        String uploadId = s3.createMultipartUpload(request -> request.bucket(bucket).key(key).contentType(contentType))
+                .uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, partNumber++) {
+                long start = offset;
+                long length = Math.min(partSize, size - offset);
+                int number = partNumber;
+                String etag = s3.uploadPart(request -> request.bucket(bucket).key(key)
+                        .uploadId(uploadId).partNumber(number).contentLength(length),
+                    RequestBody.fromContentProvider(() -> openRegion(source, start, length), length, contentType))
+                    .eTag();
+                parts.add(CompletedPart.builder().partNumber(number).eTag(etag).build());
+            }
+            s3.completeMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (SdkException | UncheckedIOException e) {
+            abort(key, uploadId);
+            throw e;
+        }
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId));
+        } catch (SdkException e) {
+            log.warn("Could not abort multipart upload of {}", key, e);
+        }
+    }
+
+    // New stream over a part of the staged file, the SDK opens one per attempt
+    private InputStream openRegion(Path source, long start, long length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            channel.position(start);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public BlobInfo stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(request -> request.bucket(bucket).key(key));
+            return new BlobInfo(key, head.contentLength(), head.lastModified().toEpochMilli(), null);
+        } catch (SdkException e) {
+            throw translate(key, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return s3.getObject(request -> request.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw translate(key, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key, long start, long end) throws IOException {
+        try {
+            return s3.getObject(request -> request.bucket(bucket).key(key).range("bytes=" + start + "-" + end));
+        } catch (SdkException e) {
+            throw translate(key, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(request -> request.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key, e);
+        }
+    }
+
+    // HEAD has no body, a missing object is only a 404 there
+    private IOException translate(String key, SdkException e) {
+        if (e instanceof NoSuchKeyException || (e instanceof S3Exception s3e && s3e.statusCode() == 404)) {
+            return new NoSuchFileException(key);
+        }
+        return new IOException("Could not read " + key, e);
+    }
+
+    @PreDestroy
+    public void close() {
+        s3.close();
+    }
+}
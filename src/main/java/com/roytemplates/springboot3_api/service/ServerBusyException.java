@@ -0,0 +1,18 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a bounded worker pool is saturated.
+ * Controllers answer it with 503 Service Unavailable and a Retry-After header.
+ */
+@Getter
+public class ServerBusyException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public ServerBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,12 @@
+package com.roytemplates.springboot3_api.service;
+
+/**
+ * Thrown when an upload would take a business over its storage quota.
+ * Controllers answer it with 507 Insufficient Storage.
+ */
+public class StorageQuotaExceededException extends RuntimeException {
+
+    public StorageQuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,163 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.StorageQuotaProperties;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+import com.roytemplates.springboot3_api.model.StorageUsage;
+import com.roytemplates.springboot3_api.model.UploadSession;
+import com.roytemplates.springboot3_api.repository.StorageUsageRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per business storage accounting with counters (StorageUsage) updated on every change,
+ * so quota checks and usage reads are a single document access whatever the number of files.
+ *
+ * - reserve: before any byte is written, the declared upload size is added if the quota allows it
+ * - commit: once stored, the reservation is replaced by the stored size of the file (compressed, or of the shared blob)
+ * - cancel: a failed upload gives its reservation back
+ * - fileDeleted: a deleted file leaves the usage
+ *
+ * A business pays for every file it references, deduplicated content included.
+ * Files without business (e.g. pictures of users not in a business yet) are not accounted.
+ * The reconciliation recomputes the counters from the active files every files.quota.reconcile-interval-ms
+ * to correct the drift left by crashes, without overwriting counters that changed meanwhile.
+ * Reservations of counters idle for files.quota.stale-reservation-minutes are dropped, except those
+ * of the resumable upload sessions still open (they hold their reservation until committed or expired).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StorageQuotaService {
+
+    private final StorageUsageRepository storageUsageRepository;
+    private final MongoTemplate mongoTemplate;
+    private final StorageQuotaProperties properties;
+
+    /**
+     * Reserve space for an upload
+     *
+     * @throws StorageQuotaExceededException if the business would exceed its quota
+     */
+    public void reserve(String businessId, long bytes) {
+        if (businessId == null) {
+            return;
+        }
+        if (!storageUsageRepository.reserve(businessId, bytes, properties.getMaxBytesPerBusiness())) {
+            throw new StorageQuotaExceededException("Storage quota exceeded for business " + businessId);
+        }
+    }
+
+    /**
+     * Replace a reservation by the size of the stored file
+     */
+    public void commit(String businessId, long reservedBytes, long storedBytes) {
+        if (businessId == null) {
+            return;
+        }
+        storageUsageRepository.adjust(businessId, storedBytes - reservedBytes, -reservedBytes, 1);
+    }
+
+    /**
+     * Give back the reservation of an upload that was not stored
+     */
+    public void cancel(String businessId, long reservedBytes) {
+        if (businessId == null) {
+            return;
+        }
+        storageUsageRepository.adjust(businessId, -reservedBytes, -reservedBytes, 0);
+    }
+
+    /**
+     * Remove a deleted file from the usage
+     */
+    public void fileDeleted(FileMetadata metadata) {
+        if (metadata.getBusinessId() == null) {
+            return;
+        }
+        storageUsageRepository.adjust(metadata.getBusinessId(), -metadata.resolveStoredSize(), 0, -1);
+    }
+
+    /**
+     * Current usage of a business
+     */
+    public StorageUsage getUsage(String businessId) {
+        return storageUsageRepository.findById(businessId)
+            .orElseGet(() -> StorageUsage.builder().id(businessId).build());
+    }
+
+    public long getQuotaBytes() {
+        return properties.getMaxBytesPerBusiness();
+    }
+
+    /**
+     * Recompute the counters of every business from its active files
+     */
+    @Scheduled(fixedDelayString = "${files.quota.reconcile-interval-ms:3600000}", initialDelay = 60000)
+    public void reconcile() {
+        // snapshot first, counters changing during the aggregation are left for the next run
+        Map<String, StorageUsage> snapshots = storageUsageRepository.findAll().stream()
+            .collect(Collectors.toMap(StorageUsage::getId, Function.identity()));
+
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("status").is(FileMetadata.FileStatus.ACTIVE).and("businessId").ne(null)),
+            // stored bytes, see FileMetadata.resolveStoredSize
+            Aggregation.project("businessId").and(ConditionalOperators.ifNull("storedSize").thenValueOf("fileSize")).as("size"),
+            Aggregation.group("businessId").sum("size").as("bytes").count().as("files")
+        ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        Map<String, long[]> actual = new HashMap<>();
+        for (Document result : mongoTemplate.aggregate(aggregation, FileMetadata.class, Document.class)) {
+            actual.put(result.getString("_id"), new long[] {
+                ((Number) result.get("bytes")).longValue(), ((Number) result.get("files")).longValue() });
+        }
+
+        // reservations held by upload sessions, given back when they are committed, aborted or expired
+        Aggregation sessionAggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("businessId").ne(null)),
+            Aggregation.group("businessId").sum("size").as("bytes"));
+        Map<String, Long> sessionBytes = new HashMap<>();
+        for (Document result : mongoTemplate.aggregate(sessionAggregation, UploadSession.class, Document.class)) {
+            sessionBytes.put(result.getString("_id"), ((Number) result.get("bytes")).longValue());
+        }
+
+        LocalDateTime staleBefore = LocalDateTime.now().minus(Duration.ofMinutes(properties.getStaleReservationMinutes()));
+        Set<String> businessIds = new HashSet<>(snapshots.keySet());
+        businessIds.addAll(actual.keySet());
+        int corrected = 0;
+        for (String businessId : businessIds) {
+            StorageUsage snapshot = snapshots.get(businessId);
+            long[] counts = actual.getOrDefault(businessId, new long[2]);
+            long reserved = snapshot != null ? snapshot.getReservedBytes() : 0;
+            if (reserved != 0 && (snapshot.getUpdatedAt() == null || snapshot.getUpdatedAt().isBefore(staleBefore))) {
+                // nothing stored for a while, only the open upload sessions still hold reservations
+                reserved = sessionBytes.getOrDefault(businessId, 0L);
+            }
+            if (snapshot != null && snapshot.getUsedBytes() == counts[0] + reserved
+                    && snapshot.getReservedBytes() == reserved && snapshot.getFileCount() == counts[1]) {
+                continue;
+            }
+            if (storageUsageRepository.reconcile(businessId, snapshot, counts[0] + reserved, reserved, counts[1])) {
+                corrected++;
+            }
+        }
+        if (corrected > 0) {
+            log.info("Corrected the storage counters of {} businesses", corrected);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a chunk of a resumable upload does not start where the received data ends.
+ * Controllers answer it with 409 Conflict and the current offset in the Upload-Offset header.
+ */
+@Getter
+public class UploadOffsetMismatchException extends RuntimeException {
+
+    private final long offset;
+
+    public UploadOffsetMismatchException(String message, long offset) {
+        super(message);
+        this.offset = offset;
+    }
+}
@@ -0,0 +1,302 @@
+package com.roytemplates.springboot3_api.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.roytemplates.springboot3_api.config.UploadSessionProperties;
+import com.roytemplates.springboot3_api.model.FileMetadata;
+import com.roytemplates.springboot3_api.model.UploadSession;
+import com.roytemplates.springboot3_api.repository.UploadSessionRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads: a session is created with the file size (reserved in the storage quota),
+ * chunks are PUT at the offset where the received data ends and appended to a temp file in the
+ * ".sessions" directory of UPLOAD_PATH, then the complete file is committed as a regular upload.
+ *
+ * - the SHA-256 is computed while the chunks are written, the digest of each session is kept in memory
+ *   and rebuilt from the temp file after a restart
+ * - an interrupted chunk keeps the bytes that arrived, the client resumes from the offset of the session
+ * - sessions without a new chunk for files.uploads.session-ttl-minutes are deleted with their data
+ *
+ * The temp files live on the node receiving the chunks, several nodes need a shared UPLOAD_PATH
+ * or sticky sessions.
+ */
+@Slf4j
+@Service
+public class UploadSessionService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileService fileService;
+    private final FileStorageService fileStorageService;
+    private final StorageQuotaService storageQuotaService;
+    private final UploadSessionProperties properties;
+    private final Path sessionsLocation;
+
+    // Running digest of the sessions written on this node, also their lock
+    private final Map<String, ChunkDigest> digests = new ConcurrentHashMap<>();
+
+    // Digest of the first digestedBytes of the session file
+    private static class ChunkDigest {
+        MessageDigest digest;
+        long digestedBytes;
+    }
+
+    public UploadSessionService(@Value("${UPLOAD_PATH}") String uploadPath,
+                                UploadSessionRepository uploadSessionRepository,
+                                FileService fileService,
+                                FileStorageService fileStorageService,
+                                StorageQuotaService storageQuotaService,
+                                UploadSessionProperties properties) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileService = fileService;
+        this.fileStorageService = fileStorageService;
+        this.storageQuotaService = storageQuotaService;
+        this.properties = properties;
+        this.sessionsLocation = Paths.get(uploadPath).toAbsolutePath().normalize().resolve(".sessions");
+
+        try {
+            Files.createDirectories(this.sessionsLocation);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where the upload sessions will be stored.", ex);
+        }
+    }
+
+    /**
+     * Open a session for a file of the given size
+     *
+     * @throws IllegalArgumentException if the size is invalid or above files.uploads.max-file-size
+     * @throws StorageQuotaExceededException if the business has no room for the file
+     */
+    public UploadSession create(String filename, long size, boolean publicAccess, String businessId, String userId) {
+        if (filename == null || filename.isBlank() || size <= 0 || size > properties.getMaxFileSize()) {
+            throw new IllegalArgumentException("Invalid file name or size");
+        }
+        storageQuotaService.reserve(businessId, size);
+
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            return uploadSessionRepository.save(UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .businessId(businessId)
+                .userId(userId)
+                .originalFilename(filename)
+                .size(size)
+                .receivedBytes(0)
+                .publicAccess(publicAccess)
+                .status(UploadSession.Status.OPEN)
+                .createdAt(now)
+                .expiresAt(now.plus(ttl()))
+                .build());
+        } catch (RuntimeException e) {
+            storageQuotaService.cancel(businessId, size);
+            throw e;
+        }
+    }
+
+    /**
+     * A session of the user
+     *
+     * @throws NoSuchElementException if the session is unknown or belongs to someone else
+     */
+    public UploadSession get(String id, String userId) {
+        return uploadSessionRepository.findById(id)
+            .filter(session -> session.getUserId().equals(userId))
+            .orElseThrow(() -> new NoSuchElementException("Upload session not found"));
+    }
+
+    /**
+     * Append a chunk at the given offset, which must be where the received data ends.
+     * Bytes of an interrupted chunk that reached the disk are kept.
+     *
+     * @param contentLength Length of the chunk, -1 if unknown
+     * @return The session with its new offset
+     * @throws UploadOffsetMismatchException if the offset is not the end of the received data
+     * @throws IllegalArgumentException if the chunk is too large or goes past the declared size
+     */
+    public UploadSession appendChunk(String id, String userId, long offset, long contentLength, InputStream in) throws IOException {
+        ChunkDigest state = digests.computeIfAbsent(id, key -> new ChunkDigest());
+        synchronized (state) {
+            UploadSession session;
+            try {
+                session = get(id, userId);
+            } catch (NoSuchElementException e) {
+                digests.remove(id);
+                throw e;
+            }
+            if (session.getStatus() != UploadSession.Status.OPEN || offset != session.getReceivedBytes()) {
+                throw new UploadOffsetMismatchException("Chunk does not start at the received offset", session.getReceivedBytes());
+            }
+            long remaining = session.getSize() - offset;
+            if (contentLength > remaining || contentLength > properties.getMaxChunkSize()) {
+                throw new IllegalArgumentException("Chunk too large");
+            }
+            long limit = Math.min(remaining, properties.getMaxChunkSize());
+
+            Path file = sessionFile(id);
+            long position = offset;
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+                // drop bytes written past the recorded offset (e.g. by a crash before it was saved)
+                channel.truncate(offset);
+                if (state.digest == null || state.digestedBytes != offset) {
+                    rebuildDigest(state, channel, offset);
+                }
+                channel.position(offset);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                try {
+                    while ((read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - (position - offset) + 1))) > 0) {
+                        if (position - offset + read > limit) {
+                            throw new IllegalArgumentException("Chunk too large");
+                        }
+                        channel.write(ByteBuffer.wrap(buffer, 0, read));
+                        state.digest.update(buffer, 0, read);
+                        position += read;
+                    }
+                } finally {
+                    // keep what was written, even when the connection dropped
+                    state.digestedBytes = position;
+                    if (position > offset && !uploadSessionRepository.advance(id, offset, position, LocalDateTime.now().plus(ttl()))) {
+                        // expired or changed meanwhile, the digest no longer matches
+                        state.digest = null;
+                    }
+                }
+            }
+            session.setReceivedBytes(position);
+            return session;
+        }
+    }
+
+    /**
+     * Store a complete upload as a file and close the session
+     *
+     * @param expectedSha256 SHA-256 of the file computed by the client, checked if given
+     * @throws IllegalArgumentException if the upload is not complete or does not match the expected hash
+     */
+    public FileMetadata commit(String id, String userId, String expectedSha256) throws IOException {
+        UploadSession session = get(id, userId);
+        ChunkDigest state = digests.computeIfAbsent(id, key -> new ChunkDigest());
+        synchronized (state) {
+            session = uploadSessionRepository.claimForCommit(id, userId, session.getSize(), LocalDateTime.now().plus(ttl()))
+                .orElseThrow(() -> new IllegalArgumentException("Upload not complete"));
+            Path file = sessionFile(id);
+            try {
+                if (state.digest == null || state.digestedBytes != session.getSize()) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        rebuildDigest(state, channel, session.getSize());
+                    }
+                }
+                String fileHash = HexFormat.of().formatHex(state.digest.digest());
+                state.digest = null;
+                if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(fileHash)) {
+                    throw new IllegalArgumentException("File hash mismatch");
+                }
+
+                FileStorageService.StagedUpload staged = fileStorageService.stageAssembled(
+                    file, session.getOriginalFilename(), fileHash, session.getSize());
+                FileMetadata metadata = fileService.commitUpload(staged, session.getBusinessId(), userId, session.isPublicAccess());
+                uploadSessionRepository.deleteById(id);
+                digests.remove(id);
+                Files.deleteIfExists(file);
+                return metadata;
+            } catch (IOException | RuntimeException e) {
+                uploadSessionRepository.reopen(id);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Abandon a session, its data is deleted and its reservation given back
+     */
+    public void abort(String id, String userId) {
+        get(id, userId);
+        uploadSessionRepository.removeOpen(id).ifPresent(this::cleanUp);
+    }
+
+    /**
+     * Delete the sessions without a new chunk for files.uploads.session-ttl-minutes
+     */
+    @Scheduled(fixedDelayString = "${files.uploads.expire-interval-ms:300000}", initialDelay = 60000)
+    public void expireSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        int expired = 0;
+        Optional<UploadSession> session;
+        while ((session = uploadSessionRepository.claimExpired(now)).isPresent()) {
+            cleanUp(session.get());
+            expired++;
+        }
+        if (expired > 0) {
+            log.info("Expired {} abandoned upload sessions", expired);
+        }
+    }
+
+    private void cleanUp(UploadSession session) {
+        storageQuotaService.cancel(session.getBusinessId(), session.getSize());
+        digests.remove(session.getId());
+        try {
+            Files.deleteIfExists(sessionFile(session.getId()));
+        } catch (IOException e) {
+            log.warn("Could not delete the data of upload session {}", session.getId(), e);
+        }
+    }
+
+    // Hash the first length bytes of the session file
+    private void rebuildDigest(ChunkDigest state, FileChannel channel, long length) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Upload session data is shorter than its offset");
+            }
+            digest.update(buffer.array(), 0, read);
+            position += read;
+        }
+        state.digest = digest;
+        state.digestedBytes = length;
+    }
+
+    private Path sessionFile(String id) {
+        // the id comes from the URL, only our UUIDs are valid
+        return sessionsLocation.resolve(UUID.fromString(id) + ".part");
+    }
+
+    private Duration ttl() {
+        return Duration.ofMinutes(properties.getSessionTtlMinutes());
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Could not generate file hash", ex);
+        }
+    }
+}
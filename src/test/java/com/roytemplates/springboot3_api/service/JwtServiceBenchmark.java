@@ -0,0 +1,91 @@
+package com.roytemplates.springboot3_api.service;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.roytemplates.springboot3_api.model.User;
+import com.roytemplates.springboot3_api.model.UserRole;
+import com.roytemplates.springboot3_api.security.CustomUserPrincipal;
+import com.roytemplates.springboot3_api.security.JwtClaims;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Per-request cost of JWT verification in the authentication filter.
+ *
+ * - legacyValidate: the previous path, three parses (extractUsername, validateToken, isTokenExpired),
+ *   each one rebuilding the parser and decoding the Base64 secret
+ * - verifyOnce: the current path, one parse with the prebuilt parser and key
+ *
+ * Run with:
+ * ./mvnw test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ *     "-Dexec.args=-cp %classpath org.openjdk.jmh.Main JwtServiceBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    // 256 bit test secret, Base64 encoded
+    private static final String SECRET = "dGVzdC1zZWNyZXQtZm9yLWp3dC1iZW5jaG1hcmstMDEyMzQ1Njc4OQ==";
+
+    private JwtService jwtService;
+    private CustomUserPrincipal principal;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 86400000L);
+        jwtService.init();
+
+        User user = new User("Bench", "Mark", "bench@example.com", "secret", UserRole.DEFAULT);
+        principal = new CustomUserPrincipal(user);
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean legacyValidate() {
+        String username = legacyClaims(token).getSubject();
+        boolean valid = legacyClaims(token).getSubject().equals(principal.getUsername())
+                && !legacyClaims(token).getExpiration().before(new Date());
+        return valid && username != null;
+    }
+
+    @Benchmark
+    public boolean verifyOnce() {
+        JwtClaims claims = jwtService.verifyToken(token);
+        return jwtService.validateToken(claims, principal);
+    }
+
+    // Previous JwtService.extractAllClaims implementation
+    private static Claims legacyClaims(String token) {
+        byte[] keyBytes = Decoders.BASE64.decode(SECRET);
+        Key key = Keys.hmacShaKeyFor(keyBytes);
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
@@ -0,0 +1,292 @@
+package com.roytemplates.springboot3_api.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.roytemplates.springboot3_api.config.BlobStoreProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * S3BlobStore against an in-process S3 stand-in (path style, single bucket):
+ * PUT, multipart upload, HEAD, ranged GET and DELETE.
+ */
+class S3BlobStoreTests {
+
+    private static final String BUCKET = "files";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private S3StandIn standIn;
+    private S3BlobStore store;
+
+    @BeforeEach
+    void start() throws IOException {
+        standIn = new S3StandIn();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", standIn::handle);
+        server.start();
+
+        BlobStoreProperties properties = new BlobStoreProperties();
+        properties.setType("s3");
+        properties.getS3().setBucket(BUCKET);
+        properties.getS3().setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.getS3().setPathStyleAccess(true);
+        properties.getS3().setAccessKey("test");
+        properties.getS3().setSecretKey("test");
+        properties.getS3().setMultipartThreshold(64 * 1024);
+        properties.getS3().setPartSize(40 * 1024);
+        store = new S3BlobStore(properties);
+    }
+
+    @AfterEach
+    void stop() {
+        store.close();
+        server.stop(0);
+    }
+
+    @Test
+    void putStatOpenDelete() throws IOException {
+        byte[] content = randomBytes(10_000);
+        store.put("small.bin", write(content), "application/octet-stream");
+
+        assertEquals(1, standIn.objects.size());
+        assertEquals(0, standIn.multipartUploads);
+
+        BlobStore.BlobInfo info = store.stat("small.bin");
+        assertEquals(content.length, info.getSize());
+        assertNull(info.getLocalPath());
+
+        try (InputStream in = store.open("small.bin")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+
+        store.delete("small.bin");
+        assertThrows(NoSuchFileException.class, () -> store.stat("small.bin"));
+        assertThrows(NoSuchFileException.class, () -> store.open("small.bin"));
+    }
+
+    @Test
+    void largeFilesAreUploadedInParts() throws IOException {
+        byte[] content = randomBytes(150_000);
+        store.put("large.bin", write(content), "application/octet-stream");
+
+        assertEquals(1, standIn.multipartUploads);
+        assertEquals(4, standIn.lastPartCount);
+        assertArrayEquals(content, standIn.objects.get("large.bin"));
+    }
+
+    @Test
+    void rangesAreReadFromTheStore() throws IOException {
+        byte[] content = randomBytes(100_000);
+        store.put("range.bin", write(content), "application/octet-stream");
+
+        try (InputStream in = store.open("range.bin", 70_000, 70_099)) {
+            byte[] expected = new byte[100];
+            System.arraycopy(content, 70_000, expected, 0, 100);
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+        assertTrue(standIn.lastRange.startsWith("bytes=70000-70099"));
+    }
+
+    private Path write(byte[] content) throws IOException {
+        Path file = tempDir.resolve(UUID.randomUUID() + ".tmp");
+        Files.write(file, content);
+        return file;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Minimal S3 protocol: objects and multipart uploads in memory, requests are not authenticated
+     */
+    private static class S3StandIn {
+
+        final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        final Map<String, TreeMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        volatile int multipartUploads;
+        volatile int lastPartCount;
+        volatile String lastRange = "";
+
+        void handle(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                String path = exchange.getRequestURI().getPath();
+                String key = path.substring(("/" + BUCKET + "/").length());
+                Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+                switch (exchange.getRequestMethod()) {
+                    case "PUT" -> put(exchange, key, query);
+                    case "POST" -> post(exchange, key, query);
+                    case "HEAD" -> head(exchange, key);
+                    case "GET" -> get(exchange, key);
+                    case "DELETE" -> {
+                        if (query.containsKey("uploadId")) {
+                            uploads.remove(query.get("uploadId"));
+                        } else {
+                            objects.remove(key);
+                        }
+                        exchange.sendResponseHeaders(204, -1);
+                    }
+                    default -> exchange.sendResponseHeaders(405, -1);
+                }
+            }
+        }
+
+        private void put(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+            byte[] body = body(exchange);
+            if (query.containsKey("uploadId")) {
+                uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), body);
+            } else {
+                objects.put(key, body);
+            }
+            exchange.getResponseHeaders().add("ETag", etag(body));
+            exchange.sendResponseHeaders(200, -1);
+        }
+
+        private void post(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+            body(exchange);
+            String xml;
+            if (query.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new TreeMap<>());
+                xml = "<InitiateMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + key
+                    + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>";
+            } else {
+                TreeMap<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (byte[] part : parts.values()) {
+                    content.write(part);
+                }
+                objects.put(key, content.toByteArray());
+                multipartUploads++;
+                lastPartCount = parts.size();
+                xml = "<CompleteMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + key
+                    + "</Key><ETag>\"multipart-" + parts.size() + "\"</ETag></CompleteMultipartUploadResult>";
+            }
+            send(exchange, 200, xml.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void head(HttpExchange exchange, String key) throws IOException {
+            byte[] content = objects.get(key);
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+            exchange.getResponseHeaders().add("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+            exchange.getResponseHeaders().add("ETag", etag(content));
+            exchange.sendResponseHeaders(200, -1);
+        }
+
+        private void get(HttpExchange exchange, String key) throws IOException {
+            byte[] content = objects.get(key);
+            if (content == null) {
+                send(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range == null) {
+                exchange.getResponseHeaders().add("ETag", etag(content));
+                send(exchange, 200, content);
+                return;
+            }
+            lastRange = range;
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+            byte[] slice = new byte[end - start + 1];
+            System.arraycopy(content, start, slice, 0, slice.length);
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            send(exchange, 206, slice);
+        }
+
+        private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+
+        // Request body, signed streaming uploads (aws-chunked) decoded
+        private byte[] body(HttpExchange exchange) throws IOException {
+            byte[] raw = exchange.getRequestBody().readAllBytes();
+            String sha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+            if (sha == null || !sha.startsWith("STREAMING-")) {
+                return raw;
+            }
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            int position = 0;
+            while (position < raw.length) {
+                int lineEnd = indexOfCrlf(raw, position);
+                String header = new String(raw, position, lineEnd - position, StandardCharsets.US_ASCII);
+                int size = Integer.parseInt(header.split(";")[0].trim(), 16);
+                if (size == 0) {
+                    break;
+                }
+                decoded.write(raw, lineEnd + 2, size);
+                position = lineEnd + 2 + size + 2;
+            }
+            return decoded.toByteArray();
+        }
+
+        private int indexOfCrlf(byte[] data, int from) {
+            for (int i = from; i < data.length - 1; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            return data.length;
+        }
+
+        private String etag(byte[] content) {
+            try {
+                return "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content)) + "\"";
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private Map<String, String> query(String rawQuery) {
+            Map<String, String> params = new HashMap<>();
+            if (rawQuery != null) {
+                for (String param : rawQuery.split("&")) {
+                    int eq = param.indexOf('=');
+                    params.put(eq < 0 ? param : param.substring(0, eq), eq < 0 ? "" : param.substring(eq + 1));
+                }
+            }
+            return params;
+        }
+    }
+}